@@ -0,0 +1,315 @@
+package com.cloudwebrtc.webrtc;
+
+import com.cloudwebrtc.webrtc.utils.ConstraintsArray;
+import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsCollectorCallback;
+import org.webrtc.RTCStatsReport;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Samples the RTP counters of a peer connection on a background timer and derives, over a
+ * rolling window of samples, the bitrate, packet loss, jitter and framerate of every inbound
+ * and outbound stream, plus the round trip time of the selected candidate pair. A compact
+ * {@code onCallQuality} event is sent every report interval instead of raw reports.
+ */
+class CallQualityMonitor {
+
+  /**
+   * Fixed-size ring buffers of the cumulative counters of one RTP stream.
+   */
+  private static class StreamWindow {
+    final String kind;
+    final boolean inbound;
+    String trackId;
+    final long[] timestampsUs;
+    final long[] bytes;
+    final long[] packets;
+    final long[] packetsLost;
+    final long[] frames;
+    /**
+     * Whether {@link #packetsLost} holds a value: always for inbound streams, only once a
+     * remote-inbound-rtp report covered the sample for outbound ones.
+     */
+    final boolean[] hasPacketsLost;
+    double jitter;
+    double roundTripTime = -1;
+    int head = 0;
+    int count = 0;
+    long lastSeenSample;
+
+    StreamWindow(String kind, boolean inbound, int size) {
+      this.kind = kind;
+      this.inbound = inbound;
+      timestampsUs = new long[size];
+      bytes = new long[size];
+      packets = new long[size];
+      packetsLost = new long[size];
+      frames = new long[size];
+      hasPacketsLost = new boolean[size];
+    }
+
+    void add(long timestampUs, long bytes, long packets, long packetsLost, long frames) {
+      int index = (head + count) % timestampsUs.length;
+      if (count == timestampsUs.length) {
+        head = (head + 1) % timestampsUs.length;
+      } else {
+        count++;
+      }
+      this.timestampsUs[index] = timestampUs;
+      this.bytes[index] = bytes;
+      this.packets[index] = packets;
+      this.packetsLost[index] = packetsLost;
+      this.frames[index] = frames;
+      this.hasPacketsLost[index] = inbound;
+    }
+
+    int oldest() {
+      return head;
+    }
+
+    int newest() {
+      return (head + count - 1) % timestampsUs.length;
+    }
+
+    /**
+     * @return the oldest ({@code fromOldest}) or newest sample with {@link #packetsLost}, or -1.
+     */
+    int withPacketsLost(boolean fromOldest) {
+      for (int i = 0; i < count; i++) {
+        int index = (head + (fromOldest ? i : count - 1 - i)) % timestampsUs.length;
+        if (hasPacketsLost[index]) {
+          return index;
+        }
+      }
+      return -1;
+    }
+  }
+
+  private final PeerConnectionObserver observer;
+  private final int windowSize;
+  private final int samplesPerReport;
+  private final ScheduledExecutorService scheduler;
+  private final ScheduledFuture<?> future;
+  /** Windows by RTP stats id, only accessed on the scheduler thread. */
+  private final Map<String, StreamWindow> windows = new HashMap<>();
+  private long sample = 0;
+  private double roundTripTime = -1;
+  /** Makes {@link #cancel} and {@link #collect} mutually exclusive. */
+  private final Object collectLock = new Object();
+  /** The last report delivered on the signaling thread and not handled yet. */
+  private final AtomicReference<RTCStatsReport> pendingReport = new AtomicReference<>();
+  // Reused by every sample, like the windows.
+  private final RTCStatsCollectorCallback reportCallback = this::onReport;
+  private final Runnable pendingReportTask = this::handlePendingReport;
+  private volatile boolean cancelled = false;
+
+  CallQualityMonitor(PeerConnectionObserver observer, long sampleIntervalMs, int windowSize,
+      long reportIntervalMs, ScheduledExecutorService scheduler) {
+    this.observer = observer;
+    this.windowSize = Math.max(2, windowSize);
+    this.samplesPerReport = (int) Math.max(1, reportIntervalMs / sampleIntervalMs);
+    this.scheduler = scheduler;
+    this.future = scheduler.scheduleWithFixedDelay(this::collect, 0, sampleIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Waits for a collection in progress, so that the peer connection can be disposed once
+   * this returns.
+   */
+  void cancel() {
+    synchronized (collectLock) {
+      cancelled = true;
+    }
+    future.cancel(false);
+  }
+
+  private void collect() {
+    synchronized (collectLock) {
+      PeerConnection peerConnection = observer.getPeerConnection();
+      if (cancelled || peerConnection == null) {
+        return;
+      }
+      peerConnection.getStats(reportCallback);
+    }
+  }
+
+  private void onReport(RTCStatsReport report) {
+    if (!cancelled && pendingReport.getAndSet(report) == null) {
+      scheduler.execute(pendingReportTask);
+    }
+  }
+
+  private void handlePendingReport() {
+    RTCStatsReport report = pendingReport.getAndSet(null);
+    if (report != null) {
+      handleReport(report);
+    }
+  }
+
+  private void handleReport(RTCStatsReport report) {
+    if (cancelled) {
+      return;
+    }
+    sample++;
+    for (RTCStats stats : report.getStatsMap().values()) {
+      switch (stats.getType()) {
+        case "inbound-rtp":
+          sampleInbound(stats);
+          break;
+        case "outbound-rtp":
+          sampleOutbound(stats);
+          break;
+        case "candidate-pair":
+          sampleCandidatePair(stats);
+          break;
+        default:
+          break;
+      }
+    }
+    // Loss and round trip time of the outbound streams are reported by the remote peer.
+    for (RTCStats stats : report.getStatsMap().values()) {
+      if ("remote-inbound-rtp".equals(stats.getType())) {
+        Map<String, Object> members = stats.getMembers();
+        StreamWindow window = windows.get(members.get("localId"));
+        if (window != null) {
+          int newest = window.newest();
+          window.packetsLost[newest] = longValue(members.get("packetsLost"));
+          window.hasPacketsLost[newest] = true;
+          window.jitter = doubleValue(members.get("jitter"));
+          window.roundTripTime = members.containsKey("roundTripTime")
+              ? doubleValue(members.get("roundTripTime")) : -1;
+        }
+      }
+    }
+    for (Iterator<StreamWindow> i = windows.values().iterator(); i.hasNext(); ) {
+      if (i.next().lastSeenSample != sample) {
+        i.remove();
+      }
+    }
+    if (sample % samplesPerReport == 0) {
+      sendReport();
+    }
+  }
+
+  private StreamWindow windowFor(RTCStats stats, boolean inbound) {
+    StreamWindow window = windows.get(stats.getId());
+    if (window == null) {
+      Object kind = stats.getMembers().get("kind");
+      window = new StreamWindow(kind != null ? kind.toString() : "", inbound, windowSize);
+      windows.put(stats.getId(), window);
+    }
+    window.lastSeenSample = sample;
+    return window;
+  }
+
+  private void sampleInbound(RTCStats stats) {
+    Map<String, Object> members = stats.getMembers();
+    StreamWindow window = windowFor(stats, true);
+    Object trackId = members.get("trackIdentifier");
+    window.trackId = trackId != null ? trackId.toString() : null;
+    window.jitter = doubleValue(members.get("jitter"));
+    window.add((long) stats.getTimestampUs(),
+        longValue(members.get("bytesReceived")),
+        longValue(members.get("packetsReceived")),
+        longValue(members.get("packetsLost")),
+        longValue(members.get("framesDecoded")));
+  }
+
+  private void sampleOutbound(RTCStats stats) {
+    Map<String, Object> members = stats.getMembers();
+    StreamWindow window = windowFor(stats, false);
+    window.add((long) stats.getTimestampUs(),
+        longValue(members.get("bytesSent")),
+        longValue(members.get("packetsSent")),
+        0,
+        longValue(members.get("framesEncoded")));
+  }
+
+  private void sampleCandidatePair(RTCStats stats) {
+    Map<String, Object> members = stats.getMembers();
+    if (Boolean.TRUE.equals(members.get("nominated")) && "succeeded".equals(members.get("state"))
+        && members.containsKey("currentRoundTripTime")) {
+      roundTripTime = doubleValue(members.get("currentRoundTripTime"));
+    }
+  }
+
+  private void sendReport() {
+    ConstraintsArray streams = new ConstraintsArray();
+    for (Map.Entry<String, StreamWindow> entry : windows.entrySet()) {
+      StreamWindow window = entry.getValue();
+      if (window.count < 2) {
+        continue;
+      }
+      int oldest = window.oldest();
+      int newest = window.newest();
+      double seconds = (window.timestampsUs[newest] - window.timestampsUs[oldest]) / 1e6;
+      if (seconds <= 0) {
+        continue;
+      }
+      ConstraintsMap params = new ConstraintsMap();
+      params.putString("id", entry.getKey());
+      params.putString("kind", window.kind);
+      params.putString("direction", window.inbound ? "inbound" : "outbound");
+      if (window.trackId != null) {
+        params.putString("trackId", window.trackId);
+      }
+      params.putDouble("bitrate", (window.bytes[newest] - window.bytes[oldest]) * 8 / seconds);
+      double packetLoss = packetLoss(window);
+      if (packetLoss >= 0) {
+        params.putDouble("packetLoss", packetLoss);
+      }
+      params.putDouble("jitterMs", window.jitter * 1000);
+      if ("video".equals(window.kind)) {
+        params.putDouble("fps", (window.frames[newest] - window.frames[oldest]) / seconds);
+      }
+      if (window.roundTripTime >= 0) {
+        params.putDouble("rttMs", window.roundTripTime * 1000);
+      }
+      streams.pushMap(params);
+    }
+    ConstraintsMap params = new ConstraintsMap();
+    params.putString("event", "onCallQuality");
+    if (roundTripTime >= 0) {
+      params.putDouble("rttMs", roundTripTime * 1000);
+    }
+    params.putArray("streams", streams.toArrayList());
+    observer.sendEvent(params);
+  }
+
+  /**
+   * @return the percentage of packets lost over the window, or -1 while unknown.
+   */
+  private static double packetLoss(StreamWindow window) {
+    int oldest = window.withPacketsLost(true);
+    int newest = window.withPacketsLost(false);
+    if (oldest < 0 || oldest == newest) {
+      return -1;
+    }
+    long packets = window.packets[newest] - window.packets[oldest];
+    long lost = Math.max(0, window.packetsLost[newest] - window.packetsLost[oldest]);
+    if (window.inbound) {
+      // packetsReceived excludes the lost packets.
+      return packets + lost > 0 ? lost * 100.0 / (packets + lost) : 0;
+    }
+    // packetsSent already includes the packets the remote peer reports lost.
+    return packets > 0 ? Math.min(100, lost * 100.0 / packets) : 0;
+  }
+
+  private static long longValue(Object value) {
+    return value instanceof Number ? ((Number) value).longValue() : 0;
+  }
+
+  private static double doubleValue(Object value) {
+    return value instanceof Number ? ((Number) value).doubleValue() : 0;
+  }
+}
@@ -0,0 +1,417 @@
+package com.cloudwebrtc.webrtc;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
+
+import org.webrtc.DataChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams payloads of any size over a data channel as a sequence of binary chunks, so that
+ * neither side ever holds more than a chunk (or a bounded buffer) in memory.
+ *
+ * Each chunk starts with a 20-byte big-endian header: the {@link #MAGIC} marker, the transfer
+ * id, the chunk sequence number, a flags byte ({@link #FLAG_LAST} on the final chunk), the
+ * {@link #VERSION} byte, two zero bytes and the length of the payload which follows. Chunks rely
+ * on the data channel being ordered and reliable.
+ *
+ * Chunks are told apart from the other binary messages of the channel by their header alone,
+ * and only on channels which opted in to receiving transfers: there, an application message
+ * which happens to carry a valid header is taken for a chunk and never reaches the app.
+ */
+class ChunkedTransfer {
+    static public final String TAG = "ChunkedTransfer";
+
+    /** "FWCT", tells chunks apart from the other binary messages of the channel. */
+    static final int MAGIC = 0x46574354;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 20;
+    static final byte FLAG_LAST = 1;
+    static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+    /** The sender waits while the channel buffers more than this. */
+    static final long MAX_BUFFERED_AMOUNT = 1024 * 1024;
+    static final long PROGRESS_INTERVAL_MS = 250;
+
+    /**
+     * Whether {@code data} carries a well-formed chunk header: the marker, a known version and
+     * flags, zero reserved bytes and a payload length matching the message length.
+     */
+    static boolean isChunk(ByteBuffer data) {
+        int position = data.position();
+        return data.remaining() >= HEADER_SIZE
+                && data.getInt(position) == MAGIC
+                && (data.get(position + 12) & ~FLAG_LAST) == 0
+                && data.get(position + 13) == VERSION
+                && data.getShort(position + 14) == 0
+                && data.getInt(position + 16) == data.remaining() - HEADER_SIZE;
+    }
+
+    private static ConstraintsMap transferEvent(String event, int transferId, String direction) {
+        ConstraintsMap params = new ConstraintsMap();
+        params.putString("event", event);
+        params.putInt("transferId", transferId);
+        params.putString("direction", direction);
+        return params;
+    }
+
+    /**
+     * Sends progress events at most once per {@link #PROGRESS_INTERVAL_MS}.
+     */
+    private static class ProgressThrottle {
+        private long lastProgressMs = 0;
+
+        void onProgress(DataChannelObserver observer, int transferId, String direction,
+                        long bytes, long total) {
+            long now = SystemClock.elapsedRealtime();
+            if (now - lastProgressMs < PROGRESS_INTERVAL_MS) {
+                return;
+            }
+            lastProgressMs = now;
+            ConstraintsMap params = transferEvent("dataChannelTransferProgress", transferId, direction);
+            params.putLong("bytes", bytes);
+            params.putLong("total", total);
+            observer.sendEvent(params);
+        }
+    }
+
+    /**
+     * Reads an {@link InputStream} chunk by chunk on a background thread, waiting for the
+     * channel to drain whenever it buffers more than {@link #MAX_BUFFERED_AMOUNT}.
+     */
+    static class Sender implements Runnable {
+        private final DataChannelObserver observer;
+        private final int transferId;
+        private final InputStream input;
+        private final long total;
+        private final int chunkSize;
+        private final ProgressThrottle progress = new ProgressThrottle();
+        private volatile boolean cancelled = false;
+
+        /**
+         * @param total size of the payload, or -1 when unknown.
+         */
+        Sender(DataChannelObserver observer, int transferId, InputStream input, long total, int chunkSize) {
+            this.observer = observer;
+            this.transferId = transferId;
+            this.input = input;
+            this.total = total;
+            this.chunkSize = chunkSize;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void run() {
+            long sent = 0;
+            try {
+                // DataChannel.send copies the payload, so one chunk buffer serves the whole transfer.
+                byte[] chunk = new byte[HEADER_SIZE + chunkSize];
+                ByteBuffer header = ByteBuffer.wrap(chunk, 0, HEADER_SIZE);
+                for (int sequence = 0; ; sequence++) {
+                    if (cancelled) {
+                        throw new IOException("cancelled");
+                    }
+                    int read = readFully(input, chunk, HEADER_SIZE, chunkSize);
+                    boolean last = read < chunkSize;
+                    header.clear();
+                    header.putInt(MAGIC).putInt(transferId).putInt(sequence)
+                            .put(last ? FLAG_LAST : 0).put(VERSION).putShort((short) 0).putInt(read);
+                    if (!observer.awaitBufferedAmountBelow(MAX_BUFFERED_AMOUNT)) {
+                        throw new IOException("data channel closed");
+                    }
+                    if (!observer.sendUnqueued(
+                            new DataChannel.Buffer(ByteBuffer.wrap(chunk, 0, HEADER_SIZE + read), true))) {
+                        throw new IOException("send failed");
+                    }
+                    sent += read;
+                    if (last) {
+                        break;
+                    }
+                    progress.onProgress(observer, transferId, "send", sent, total);
+                }
+                ConstraintsMap params = transferEvent("dataChannelTransferComplete", transferId, "send");
+                params.putLong("bytes", sent);
+                observer.sendEvent(params);
+            } catch (IOException | InterruptedException e) {
+                Log.d(TAG, "transfer " + transferId + " failed: " + e.getMessage());
+                ConstraintsMap params = transferEvent("dataChannelTransferFailed", transferId, "send");
+                params.putLong("bytes", sent);
+                params.putString("error", String.valueOf(e.getMessage()));
+                observer.sendEvent(params);
+            } finally {
+                try {
+                    input.close();
+                } catch (IOException ignored) {
+                }
+                observer.onSenderFinished(transferId);
+            }
+        }
+
+        private static int readFully(InputStream input, byte[] buffer, int offset, int length)
+                throws IOException {
+            int read = 0;
+            while (read < length) {
+                int count = input.read(buffer, offset + read, length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Reassembles incoming transfers, either into one file per transfer in a directory or into
+     * memory up to a size limit. Chunks are copied out of the native buffer on the signaling
+     * thread and written on a serial background executor.
+     *
+     * The chunks waiting for the executor are bounded by {@link #MAX_PENDING_BYTES} and
+     * {@link #MAX_PENDING_CHUNKS}: past that the transfer of the chunk fails instead of
+     * growing memory, since the signaling thread cannot wait for the writes. At most
+     * {@link #MAX_CONCURRENT_TRANSFERS} are written at once, and a transfer without a chunk for
+     * {@link #INCOMPLETE_TIMEOUT_MS} fails and closes its output.
+     */
+    static class Receiver {
+        static final long MAX_PENDING_BYTES = 8 * 1024 * 1024;
+        static final int MAX_PENDING_CHUNKS = 1024;
+        static final int MAX_CONCURRENT_TRANSFERS = 8;
+        static final long INCOMPLETE_TIMEOUT_MS = 30_000;
+
+        private static class Incoming {
+            @Nullable
+            OutputStream output;
+            @Nullable
+            File file;
+            final ProgressThrottle progress = new ProgressThrottle();
+            long received = 0;
+            int nextSequence = 0;
+            boolean failed = false;
+            long lastChunkMs = SystemClock.elapsedRealtime();
+        }
+
+        private final DataChannelObserver observer;
+        @Nullable
+        private final File directory;
+        private final int maxBufferSize;
+        private final Executor executor;
+        /** Only accessed on {@link #executor}. */
+        private final Map<Integer, Incoming> transfers = new HashMap<>();
+        private final AtomicLong pendingBytes = new AtomicLong();
+        private final AtomicInteger pendingChunks = new AtomicInteger();
+        /** Transfers which lost a chunk to overload; their remaining chunks are not copied. */
+        private final Set<Integer> overloaded = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        private final Handler handler = new Handler(Looper.getMainLooper());
+        private final Runnable expireRunnable = new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(Receiver.this::expireIncomplete);
+                handler.postDelayed(this, INCOMPLETE_TIMEOUT_MS / 2);
+            }
+        };
+
+        /**
+         * @param directory     where to write the transfers, or {@code null} to keep them in memory.
+         * @param maxBufferSize largest transfer accepted in memory.
+         * @param executor      serial executor the chunks are written on.
+         */
+        Receiver(DataChannelObserver observer, @Nullable File directory, int maxBufferSize, Executor executor) {
+            this.observer = observer;
+            this.directory = directory;
+            this.maxBufferSize = maxBufferSize;
+            this.executor = executor;
+            handler.postDelayed(expireRunnable, INCOMPLETE_TIMEOUT_MS / 2);
+        }
+
+        /**
+         * Must be called during {@code onMessage}, the buffer is released afterwards.
+         */
+        void onChunk(ByteBuffer data) {
+            int transferId = data.getInt(data.position() + 4);
+            boolean last = (data.get(data.position() + 12) & FLAG_LAST) != 0;
+            int length = data.remaining();
+            if (overloaded.contains(transferId)) {
+                if (last) {
+                    executor.execute(() -> abort(transferId, true, "receiver overloaded"));
+                }
+                return;
+            }
+            if (pendingChunks.incrementAndGet() > MAX_PENDING_CHUNKS
+                    || pendingBytes.addAndGet(length) > MAX_PENDING_BYTES) {
+                pendingChunks.decrementAndGet();
+                pendingBytes.addAndGet(-length);
+                overloaded.add(transferId);
+                executor.execute(() -> abort(transferId, last, "receiver overloaded"));
+                return;
+            }
+            byte[] chunk = new byte[length];
+            data.get(chunk);
+            executor.execute(() -> {
+                pendingChunks.decrementAndGet();
+                pendingBytes.addAndGet(-chunk.length);
+                handleChunk(chunk);
+            });
+        }
+
+        void close() {
+            handler.removeCallbacks(expireRunnable);
+            executor.execute(() -> {
+                for (Map.Entry<Integer, Incoming> entry : transfers.entrySet()) {
+                    fail(entry.getKey(), entry.getValue(), "receiver closed");
+                }
+                transfers.clear();
+                overloaded.clear();
+            });
+        }
+
+        private void handleChunk(byte[] chunk) {
+            ByteBuffer header = ByteBuffer.wrap(chunk, 0, HEADER_SIZE);
+            header.getInt();
+            int transferId = header.getInt();
+            int sequence = header.getInt();
+            boolean last = (header.get() & FLAG_LAST) != 0;
+            int length = chunk.length - HEADER_SIZE;
+
+            Incoming incoming = transfers.get(transferId);
+            try {
+                if (incoming == null) {
+                    incoming = new Incoming();
+                    transfers.put(transferId, incoming);
+                    open(transferId, incoming);
+                }
+                incoming.lastChunkMs = SystemClock.elapsedRealtime();
+                if (!incoming.failed) {
+                    if (sequence != incoming.nextSequence) {
+                        throw new IOException("chunk " + sequence + " out of order");
+                    }
+                    if (incoming.file == null && incoming.received + length > maxBufferSize) {
+                        throw new IOException("transfer exceeds " + maxBufferSize + " bytes");
+                    }
+                    incoming.output.write(chunk, HEADER_SIZE, length);
+                    incoming.received += length;
+                    incoming.nextSequence++;
+                    if (!last) {
+                        incoming.progress.onProgress(observer, transferId, "receive", incoming.received, -1);
+                    }
+                }
+            } catch (IOException e) {
+                fail(transferId, incoming, e.getMessage());
+            }
+            if (last) {
+                transfers.remove(transferId);
+                if (!incoming.failed) {
+                    complete(transferId, incoming);
+                }
+            }
+        }
+
+        /**
+         * Fails the transfer of a chunk dropped on overload, keeping it as failed until its last
+         * chunk so that the following ones are ignored.
+         */
+        private void abort(int transferId, boolean last, String error) {
+            Incoming incoming = transfers.get(transferId);
+            if (incoming == null) {
+                incoming = new Incoming();
+                transfers.put(transferId, incoming);
+            }
+            incoming.lastChunkMs = SystemClock.elapsedRealtime();
+            fail(transferId, incoming, error);
+            if (last) {
+                transfers.remove(transferId);
+                overloaded.remove(transferId);
+            }
+        }
+
+        private void expireIncomplete() {
+            long now = SystemClock.elapsedRealtime();
+            for (Iterator<Map.Entry<Integer, Incoming>> i = transfers.entrySet().iterator(); i.hasNext(); ) {
+                Map.Entry<Integer, Incoming> entry = i.next();
+                if (now - entry.getValue().lastChunkMs >= INCOMPLETE_TIMEOUT_MS) {
+                    fail(entry.getKey(), entry.getValue(), "timed out");
+                    i.remove();
+                    overloaded.remove(entry.getKey());
+                }
+            }
+        }
+
+        private void open(int transferId, Incoming incoming) throws IOException {
+            int active = 0;
+            for (Incoming other : transfers.values()) {
+                if (other.output != null && !other.failed) {
+                    active++;
+                }
+            }
+            if (active >= MAX_CONCURRENT_TRANSFERS) {
+                throw new IOException("more than " + MAX_CONCURRENT_TRANSFERS + " concurrent transfers");
+            }
+            if (directory == null) {
+                incoming.output = new ByteArrayOutputStream();
+            } else {
+                incoming.file = new File(directory, "transfer-" + transferId);
+                incoming.output = new FileOutputStream(incoming.file);
+            }
+        }
+
+        private void complete(int transferId, Incoming incoming) {
+            try {
+                incoming.output.close();
+            } catch (IOException e) {
+                fail(transferId, incoming, e.getMessage());
+                return;
+            }
+            ConstraintsMap params = transferEvent("dataChannelTransferComplete", transferId, "receive");
+            params.putLong("bytes", incoming.received);
+            if (incoming.file != null) {
+                params.putString("path", incoming.file.getAbsolutePath());
+            } else {
+                params.putByte("data", ((ByteArrayOutputStream) incoming.output).toByteArray());
+            }
+            observer.sendEvent(params);
+        }
+
+        private void fail(int transferId, Incoming incoming, String error) {
+            if (incoming.failed) {
+                return;
+            }
+            incoming.failed = true;
+            if (incoming.output != null) {
+                try {
+                    incoming.output.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (incoming.file != null && !incoming.file.delete()) {
+                Log.d(TAG, "failed to delete " + incoming.file);
+            }
+            ConstraintsMap params = transferEvent("dataChannelTransferFailed", transferId, "receive");
+            params.putLong("bytes", incoming.received);
+            params.putString("error", String.valueOf(error));
+            observer.sendEvent(params);
+        }
+    }
+}
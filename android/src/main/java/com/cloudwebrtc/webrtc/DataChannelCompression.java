@@ -0,0 +1,84 @@
+package com.cloudwebrtc.webrtc;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per-channel deflate compression of data channel messages. Both peers must enable it: every
+ * message then starts with a one-byte marker, {@link #RAW} or {@link #DEFLATED}. Messages
+ * smaller than the threshold, or which do not shrink, are sent raw.
+ *
+ * The {@link Deflater} and {@link Inflater} are reused for every message of the channel.
+ */
+class DataChannelCompression {
+    static final byte RAW = 0;
+    static final byte DEFLATED = 1;
+    static final int DEFAULT_THRESHOLD = 256;
+    /** Guards against messages inflating to absurd sizes. */
+    static final int MAX_INFLATED_SIZE = 64 * 1024 * 1024;
+
+    private final int threshold;
+    private final Deflater deflater = new Deflater();
+    private final Inflater inflater = new Inflater();
+    private final byte[] chunk = new byte[8192];
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    DataChannelCompression(int threshold) {
+        this.threshold = threshold;
+    }
+
+    synchronized ByteBuffer compress(ByteBuffer payload) {
+        int length = payload.remaining();
+        byte[] input = new byte[length];
+        payload.get(input);
+        if (length >= threshold) {
+            deflater.reset();
+            deflater.setInput(input);
+            deflater.finish();
+            output.reset();
+            output.write(DEFLATED);
+            while (!deflater.finished() && output.size() <= length) {
+                int count = deflater.deflate(chunk);
+                output.write(chunk, 0, count);
+            }
+            if (deflater.finished() && output.size() <= length) {
+                return ByteBuffer.wrap(output.toByteArray());
+            }
+        }
+        ByteBuffer message = ByteBuffer.allocate(1 + length);
+        message.put(RAW).put(input);
+        message.flip();
+        return message;
+    }
+
+    synchronized ByteBuffer decompress(ByteBuffer message) throws DataFormatException {
+        if (!message.hasRemaining()) {
+            return message;
+        }
+        byte marker = message.get();
+        if (marker == RAW) {
+            return message.slice();
+        } else if (marker != DEFLATED) {
+            throw new DataFormatException("unknown compression marker " + marker);
+        }
+        byte[] input = new byte[message.remaining()];
+        message.get(input);
+        inflater.reset();
+        inflater.setInput(input);
+        output.reset();
+        while (!inflater.finished()) {
+            int count = inflater.inflate(chunk);
+            if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("truncated message");
+            }
+            output.write(chunk, 0, count);
+            if (output.size() > MAX_INFLATED_SIZE) {
+                throw new DataFormatException("message inflates beyond " + MAX_INFLATED_SIZE + " bytes");
+            }
+        }
+        return ByteBuffer.wrap(output.toByteArray());
+    }
+}
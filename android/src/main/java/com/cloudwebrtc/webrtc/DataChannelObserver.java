@@ -1,35 +1,373 @@
 package com.cloudwebrtc.webrtc;
 
-import com.cloudwebrtc.webrtc.utils.AnyThreadSink;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.cloudwebrtc.webrtc.utils.BatchingEventSink;
+import com.cloudwebrtc.webrtc.utils.BoundedEventQueue;
 import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
 
 import org.webrtc.DataChannel;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
 
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.EventChannel;
 
 class DataChannelObserver implements DataChannel.Observer, EventChannel.StreamHandler {
+    static public final String TAG = "DataChannelObserver";
 
     private final String flutterId;
     private final DataChannel dataChannel;
 
     private final EventChannel eventChannel;
-    private EventChannel.EventSink eventSink;
-    private final ArrayList eventQueue = new ArrayList();
+    private BatchingEventSink eventSink;
+    private final BoundedEventQueue eventQueue = new BoundedEventQueue();
+
+    /**
+     * Size of the header preceding each payload on the raw message channel: one flags byte
+     * (bit 0 set for binary), three reserved bytes and the big-endian int32 payload length.
+     */
+    static final int RAW_MESSAGE_HEADER_SIZE = 8;
+    static final byte RAW_MESSAGE_FLAG_BINARY = 1;
+
+    private final BinaryMessenger messenger;
+    private final String messageChannelName;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * When set, received messages are framed and sent on {@link #messageChannelName}
+     * instead of being encoded as {@code dataChannelReceiveMessage} events.
+     */
+    private volatile boolean rawMessages = false;
+
+    /**
+     * Flow control: while the channel buffers more than {@code highWatermark} bytes, sends are
+     * held in {@link #sendQueue} and flushed as the buffer drains. Dart then only gets a
+     * {@code dataChannelBufferedAmountLow} event once the buffer falls to {@code lowWatermark},
+     * instead of every buffered amount change. Disabled when {@code highWatermark} is 0.
+     *
+     * {@code DataChannel.send} and {@code bufferedAmount} block on the signaling thread, which
+     * calls back {@link #onBufferedAmountChange} from within {@code send}, so they are never
+     * called while holding the {@link #sendQueue} monitor: messages are dequeued under the lock
+     * and sent after releasing it, by one flusher at a time.
+     */
+    private volatile long highWatermark = 0;
+    private volatile long lowWatermark = 0;
+    private final ArrayDeque<DataChannel.Buffer> sendQueue = new ArrayDeque<>();
+    private boolean aboveHighWatermark = false;
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private volatile boolean flushRequested = false;
+
+    /**
+     * Notified on every buffered amount and state change, for chunked transfer senders. Only
+     * guards {@link #bufferedAmountChanged}: the channel is queried outside of it, since the
+     * signaling thread needs it to notify.
+     */
+    private final Object bufferedAmountLock = new Object();
+    private boolean bufferedAmountChanged = false;
+    private final AtomicInteger nextTransferId = new AtomicInteger();
+    private final Map<Integer, ChunkedTransfer.Sender> transferSenders = new ConcurrentHashMap<>();
+    private volatile ChunkedTransfer.Receiver transferReceiver;
+    @Nullable
+    private volatile DataChannelCompression compression;
+
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    /** Only updated from {@link #onBufferedAmountChange}, to keep sends free of extra round trips. */
+    private final AtomicLong peakBufferedAmount = new AtomicLong();
+    private long metricsInterval = 0;
+    private final Runnable metricsRunnable = new Runnable() {
+        @Override
+        public void run() {
+            ConstraintsMap params = getMetrics();
+            params.putString("event", "dataChannelMetrics");
+            sendEvent(params, "dataChannelMetrics");
+            handler.postDelayed(this, metricsInterval);
+        }
+    };
 
     DataChannelObserver(BinaryMessenger messenger, String peerConnectionId, String flutterId,
                         DataChannel dataChannel) {
         this.flutterId = flutterId;
         this.dataChannel = dataChannel;
+        this.messenger = messenger;
+        this.messageChannelName = "FlutterWebRTC/dataChannelMessage" + peerConnectionId + flutterId;
         eventChannel =
                 new EventChannel(messenger, "FlutterWebRTC/dataChannelEvent" + peerConnectionId + flutterId);
         eventChannel.setStreamHandler(this);
     }
 
+    void setRawMessages(boolean enabled) {
+        rawMessages = enabled;
+    }
+
+    /**
+     * Deflates outgoing messages of at least {@code threshold} bytes and inflates incoming
+     * ones; the remote peer must enable it too.
+     */
+    void setCompression(boolean enabled, int threshold) {
+        compression = enabled ? new DataChannelCompression(threshold) : null;
+    }
+
+    private DataChannel.Buffer compress(DataChannel.Buffer buffer) {
+        DataChannelCompression compression = this.compression;
+        if (compression == null) {
+            return buffer;
+        }
+        return new DataChannel.Buffer(compression.compress(buffer.data), buffer.binary);
+    }
+
+    void setFlowControl(long highWatermark, long lowWatermark) {
+        long high = Math.max(0, highWatermark);
+        this.lowWatermark = Math.min(Math.max(0, lowWatermark), high);
+        this.highWatermark = high;
+        if (high == 0) {
+            // Nothing would flush the held messages anymore, send them all.
+            flushSendQueue();
+            synchronized (sendQueue) {
+                aboveHighWatermark = false;
+            }
+        }
+    }
+
+    /**
+     * Sends the buffer, or with flow control queues it and flushes what the channel has room
+     * for.
+     *
+     * @return false when the data channel rejected a message sent without flow control.
+     */
+    boolean send(DataChannel.Buffer buffer) {
+        buffer = compress(buffer);
+        if (highWatermark == 0) {
+            return sendNow(buffer);
+        }
+        synchronized (sendQueue) {
+            sendQueue.add(buffer);
+        }
+        flushSendQueue();
+        return true;
+    }
+
+    private boolean sendNow(DataChannel.Buffer buffer) {
+        long size = buffer.data.remaining();
+        if (!dataChannel.send(buffer)) {
+            return false;
+        }
+        messagesSent.incrementAndGet();
+        bytesSent.addAndGet(size);
+        return true;
+    }
+
+    private void updatePeakBufferedAmount(long bufferedAmount) {
+        long peak;
+        do {
+            peak = peakBufferedAmount.get();
+        } while (bufferedAmount > peak && !peakBufferedAmount.compareAndSet(peak, bufferedAmount));
+    }
+
+    /**
+     * Counters of the channel, of its send queue and of its event delivery, telling SCTP
+     * congestion (buffered and queued amounts) apart from platform channel congestion
+     * (event queue depth and delay).
+     */
+    ConstraintsMap getMetrics() {
+        ConstraintsMap params = new ConstraintsMap();
+        params.putInt("id", dataChannel.id());
+        params.putLong("messagesSent", messagesSent.get());
+        params.putLong("bytesSent", bytesSent.get());
+        params.putLong("messagesReceived", messagesReceived.get());
+        params.putLong("bytesReceived", bytesReceived.get());
+        params.putLong("bufferedAmount", dataChannel.bufferedAmount());
+        params.putLong("peakBufferedAmount", peakBufferedAmount.get());
+        synchronized (sendQueue) {
+            params.putInt("sendQueueLength", sendQueue.size());
+        }
+        synchronized (eventQueue) {
+            params.putInt("pendingEvents", eventQueue.size());
+            params.putLong("droppedEvents", eventQueue.getDroppedCount());
+            params.putLong("coalescedEvents", eventQueue.getCoalescedCount());
+            BatchingEventSink sink = eventSink;
+            if (sink != null) {
+                params.putInt("eventQueueDepth", sink.getDepth());
+                params.putLong("maxEventQueueDepth", sink.getMaxDepth());
+                params.putDouble("averageEventDelayMs", sink.getAverageDelayNanos() / 1e6);
+                params.putDouble("maxEventDelayMs", sink.getMaxDelayNanos() / 1e6);
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Sends a {@code dataChannelMetrics} event every {@code intervalMs}, or stops when 0.
+     */
+    void setMetricsInterval(long intervalMs) {
+        handler.post(() -> {
+            handler.removeCallbacks(metricsRunnable);
+            metricsInterval = intervalMs;
+            if (intervalMs > 0) {
+                handler.postDelayed(metricsRunnable, intervalMs);
+            }
+        });
+    }
+
+    /**
+     * Sends the queued messages the channel has room for. Only one thread flushes at a time;
+     * a flush requested meanwhile, such as from {@link #onBufferedAmountChange} called back by
+     * the flusher's own {@code send}, is run by that thread once it is done instead of
+     * recursing.
+     */
+    private void flushSendQueue() {
+        flushRequested = true;
+        while (flushRequested && flushing.compareAndSet(false, true)) {
+            try {
+                flushRequested = false;
+                flushOnce();
+            } finally {
+                flushing.set(false);
+            }
+        }
+    }
+
+    private void flushOnce() {
+        long bufferedAmount = dataChannel.bufferedAmount();
+        while (true) {
+            DataChannel.Buffer next;
+            long high = highWatermark;
+            synchronized (sendQueue) {
+                next = sendQueue.peek();
+                if (next == null) {
+                    break;
+                }
+                // A message larger than the watermark still goes out once the buffer is empty.
+                if (high > 0 && bufferedAmount > 0 && bufferedAmount + next.data.remaining() > high) {
+                    aboveHighWatermark = true;
+                    break;
+                }
+                sendQueue.poll();
+                if (high > 0 && bufferedAmount + next.data.remaining() > high) {
+                    aboveHighWatermark = true;
+                }
+            }
+            sendNow(next);
+            bufferedAmount = dataChannel.bufferedAmount();
+        }
+        boolean low;
+        synchronized (sendQueue) {
+            low = aboveHighWatermark && sendQueue.isEmpty() && bufferedAmount <= lowWatermark;
+            if (low) {
+                aboveHighWatermark = false;
+            }
+        }
+        if (low) {
+            ConstraintsMap params = new ConstraintsMap();
+            params.putString("event", "dataChannelBufferedAmountLow");
+            params.putInt("id", dataChannel.id());
+            params.putLong("bufferedAmount", bufferedAmount);
+            sendEvent(params, "dataChannelBufferedAmountLow");
+        }
+    }
+
+    /**
+     * Sends bypassing the flow control queue, for callers which throttle themselves.
+     */
+    boolean sendUnqueued(DataChannel.Buffer buffer) {
+        return sendNow(compress(buffer));
+    }
+
+    /**
+     * Blocks until the channel buffers at most {@code amount} bytes.
+     *
+     * @return false if the channel is no longer open.
+     */
+    boolean awaitBufferedAmountBelow(long amount) throws InterruptedException {
+        while (true) {
+            synchronized (bufferedAmountLock) {
+                bufferedAmountChanged = false;
+            }
+            if (dataChannel.state() != DataChannel.State.OPEN) {
+                return false;
+            }
+            if (dataChannel.bufferedAmount() <= amount) {
+                return true;
+            }
+            synchronized (bufferedAmountLock) {
+                if (!bufferedAmountChanged) {
+                    // Bounded wait, the channel is also polled in case a notification was missed.
+                    bufferedAmountLock.wait(1000);
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams {@code input} as a chunked transfer on the given executor.
+     *
+     * @param total size of the payload, or -1 when unknown.
+     * @return the transfer id reported in the transfer events.
+     */
+    int sendStream(InputStream input, long total, int chunkSize, Executor executor) {
+        int transferId = nextTransferId.incrementAndGet();
+        ChunkedTransfer.Sender sender = new ChunkedTransfer.Sender(this, transferId, input, total, chunkSize);
+        transferSenders.put(transferId, sender);
+        executor.execute(sender);
+        return transferId;
+    }
+
+    boolean cancelTransfer(int transferId) {
+        ChunkedTransfer.Sender sender = transferSenders.get(transferId);
+        if (sender == null) {
+            return false;
+        }
+        sender.cancel();
+        return true;
+    }
+
+    void onSenderFinished(int transferId) {
+        transferSenders.remove(transferId);
+    }
+
+    /**
+     * Reassembles incoming chunked transfers with {@code receiver}, or stops when {@code null}.
+     */
+    void setTransferReceiver(ChunkedTransfer.Receiver receiver) {
+        ChunkedTransfer.Receiver previous = transferReceiver;
+        transferReceiver = receiver;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    private void notifyBufferedAmountWaiters() {
+        synchronized (bufferedAmountLock) {
+            bufferedAmountChanged = true;
+            bufferedAmountLock.notifyAll();
+        }
+    }
+
+    private void clearSendQueue() {
+        synchronized (sendQueue) {
+            sendQueue.clear();
+            aboveHighWatermark = false;
+        }
+    }
+
     private String dataChannelStateString(DataChannel.State dataChannelState) {
         switch (dataChannelState) {
             case CONNECTING:
@@ -46,45 +384,93 @@ class DataChannelObserver implements DataChannel.Observer, EventChannel.StreamHa
 
     @Override
     public void onListen(Object o, EventChannel.EventSink sink) {
-        eventSink = new AnyThreadSink(sink);
-        for(Object event : eventQueue) {
-            eventSink.success(event);
+        synchronized (eventQueue) {
+            eventSink = new BatchingEventSink(sink);
+            for (Object event : eventQueue.drain()) {
+                if (event instanceof ByteBuffer) {
+                    ByteBuffer frame = (ByteBuffer) event;
+                    eventSink.execute(() -> messenger.send(messageChannelName, frame));
+                } else {
+                    eventSink.success(event);
+                }
+            }
+            if (eventQueue.getDroppedCount() > 0 || eventQueue.getCoalescedCount() > 0) {
+                Log.w(TAG, "dataChannel " + flutterId + ": dropped " + eventQueue.getDroppedCount()
+                        + " and coalesced " + eventQueue.getCoalescedCount() + " events before listen");
+            }
         }
-        eventQueue.clear();
     }
 
     @Override
     public void onCancel(Object o) {
-        eventSink = null;
+        synchronized (eventQueue) {
+            eventSink = null;
+        }
     }
     
     @Override
     public void onBufferedAmountChange(long amount) {
+        notifyBufferedAmountWaiters();
+        long bufferedAmount = dataChannel.bufferedAmount();
+        // |amount| is the previous amount, the peak may be either.
+        updatePeakBufferedAmount(Math.max(amount, bufferedAmount));
+        if (highWatermark > 0) {
+            flushSendQueue();
+            return;
+        }
         ConstraintsMap params = new ConstraintsMap();
         params.putString("event", "dataChannelBufferedAmountChange");
         params.putInt("id", dataChannel.id());
-        params.putLong("bufferedAmount", dataChannel.bufferedAmount());
+        params.putLong("bufferedAmount", bufferedAmount);
         params.putLong("changedAmount", amount);
-        sendEvent(params);
+        sendEvent(params, "dataChannelBufferedAmountChange");
     }
 
     @Override
     public void onStateChange() {
+        DataChannel.State state = dataChannel.state();
+        if (state == DataChannel.State.CLOSING || state == DataChannel.State.CLOSED) {
+            clearSendQueue();
+            setTransferReceiver(null);
+            setMetricsInterval(0);
+        }
+        notifyBufferedAmountWaiters();
         ConstraintsMap params = new ConstraintsMap();
         params.putString("event", "dataChannelStateChanged");
         params.putInt("id", dataChannel.id());
-        params.putString("state", dataChannelStateString(dataChannel.state()));
+        params.putString("state", dataChannelStateString(state));
         sendEvent(params);
     }
 
     @Override
     public void onMessage(DataChannel.Buffer buffer) {
+        messagesReceived.incrementAndGet();
+        bytesReceived.addAndGet(buffer.data.remaining());
+        DataChannelCompression compression = this.compression;
+        if (compression != null) {
+            try {
+                buffer = new DataChannel.Buffer(compression.decompress(buffer.data), buffer.binary);
+            } catch (DataFormatException e) {
+                Log.w(TAG, "dataChannel " + flutterId + ": dropping undecodable message: " + e.getMessage());
+                return;
+            }
+        }
+        ChunkedTransfer.Receiver receiver = transferReceiver;
+        if (receiver != null && buffer.binary && ChunkedTransfer.isChunk(buffer.data)) {
+            receiver.onChunk(buffer.data);
+            return;
+        }
+        if (rawMessages) {
+            sendRawMessage(buffer);
+            return;
+        }
         ConstraintsMap params = new ConstraintsMap();
         params.putString("event", "dataChannelReceiveMessage");
         params.putInt("id", dataChannel.id());
 
         byte[] bytes;
-        if (buffer.data.hasArray()) {
+        if (buffer.data.hasArray() && buffer.data.arrayOffset() == 0 && buffer.data.position() == 0
+                && buffer.data.remaining() == buffer.data.array().length) {
             bytes = buffer.data.array();
         } else {
             bytes = new byte[buffer.data.remaining()];
@@ -102,11 +488,49 @@ class DataChannelObserver implements DataChannel.Observer, EventChannel.StreamHa
         sendEvent(params);
     }
 
-    private void sendEvent(ConstraintsMap params) {
-        if (eventSink != null) {
-            eventSink.success(params.toMap());
-        } else {
-            eventQueue.add(params.toMap());
+    /**
+     * Copies the payload once, straight from the native buffer which is only valid during
+     * {@link #onMessage}, into the direct buffer handed to the messenger. The frame goes
+     * through the event sink, or the event queue before Dart listens, so that it stays ordered
+     * with the state events of the channel.
+     */
+    private void sendRawMessage(DataChannel.Buffer buffer) {
+        int length = buffer.data.remaining();
+        ByteBuffer frame = ByteBuffer.allocateDirect(RAW_MESSAGE_HEADER_SIZE + length)
+                .order(ByteOrder.BIG_ENDIAN);
+        frame.put(buffer.binary ? RAW_MESSAGE_FLAG_BINARY : 0);
+        frame.put((byte) 0).put((byte) 0).put((byte) 0);
+        frame.putInt(length);
+        frame.put(buffer.data);
+        frame.flip();
+        BatchingEventSink sink;
+        synchronized (eventQueue) {
+            sink = eventSink;
+            if (sink == null) {
+                eventQueue.add(frame);
+                return;
+            }
+        }
+        sink.execute(() -> messenger.send(messageChannelName, frame));
+    }
+
+    void sendEvent(ConstraintsMap params) {
+        sendEvent(params, null);
+    }
+
+    /**
+     * @param coalesceKey events with the same key replace each other while waiting for the
+     *                    listener, when the queue coalesces.
+     */
+    private void sendEvent(ConstraintsMap params, String coalesceKey) {
+        BatchingEventSink sink;
+        synchronized (eventQueue) {
+            sink = eventSink;
+            if (sink == null) {
+                eventQueue.add(params.toMap(), coalesceKey);
+                return;
+            }
         }
+        sink.success(params.toMap());
     }
 }
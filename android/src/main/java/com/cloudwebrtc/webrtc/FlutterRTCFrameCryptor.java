@@ -11,7 +11,6 @@ import org.webrtc.FrameCryptorKeyProvider;
 import org.webrtc.RtpReceiver;
 import org.webrtc.RtpSender;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -23,6 +22,7 @@ import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
 
 import com.cloudwebrtc.webrtc.utils.AnyThreadSink;
+import com.cloudwebrtc.webrtc.utils.BoundedEventQueue;
 import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
 import com.cloudwebrtc.webrtc.utils.ConstraintsArray;
 
@@ -35,35 +35,40 @@ public class FlutterRTCFrameCryptor {
             eventChannel.setStreamHandler(new EventChannel.StreamHandler() {
                 @Override
                 public void onListen(Object o, EventChannel.EventSink sink) {
-                    eventSink = new AnyThreadSink(sink);
-                    for(Object event : eventQueue) {
-                        eventSink.success(event);
-                    }
-                    eventQueue.clear();
+                    FrameCryptorStateObserver.this.onListen(o, sink);
                 }
                 @Override
                 public void onCancel(Object o) {
-                    eventSink = null;
+                    FrameCryptorStateObserver.this.onCancel(o);
                 }
             });
         }
         private final EventChannel eventChannel;
         private EventChannel.EventSink eventSink;
-        private final ArrayList eventQueue = new ArrayList();
+        private final BoundedEventQueue eventQueue =
+                new BoundedEventQueue(BoundedEventQueue.defaultCapacity, BoundedEventQueue.defaultByteBudget,
+                        BoundedEventQueue.OverflowPolicy.COALESCE_BY_KEY);
         private final String frameCryptorId;
 
         @Override
         public void onListen(Object arguments, EventChannel.EventSink events) {
-            eventSink = new AnyThreadSink(events);
-            for(Object event : eventQueue) {
-                eventSink.success(event);
+            synchronized (eventQueue) {
+                eventSink = new AnyThreadSink(events);
+                for (Object event : eventQueue.drain()) {
+                    eventSink.success(event);
+                }
+                if (eventQueue.getDroppedCount() > 0 || eventQueue.getCoalescedCount() > 0) {
+                    Log.w(TAG, "frameCryptor " + frameCryptorId + ": dropped " + eventQueue.getDroppedCount()
+                            + " and coalesced " + eventQueue.getCoalescedCount() + " events before listen");
+                }
             }
-            eventQueue.clear();
         }
 
         @Override
         public void onCancel(Object arguments) {
-            eventSink = null;
+            synchronized (eventQueue) {
+                eventSink = null;
+            }
         }
 
         private String  frameCryptorErrorStateToString( FrameCryptor.FrameCryptionState state) {
@@ -93,11 +98,16 @@ public class FlutterRTCFrameCryptor {
             event.put("event", "frameCryptionStateChanged");
             event.put("participantId", participantId);
             event.put("state",frameCryptorErrorStateToString(state));
-            if (eventSink != null) {
-                eventSink.success(event);
-            } else {
-                eventQueue.add(event);
+            EventChannel.EventSink sink;
+            synchronized (eventQueue) {
+                sink = eventSink;
+                if (sink == null) {
+                    // Only the latest state of each participant matters to a late listener.
+                    eventQueue.add(event, participantId);
+                    return;
+                }
             }
+            sink.success(event);
         }
     }
 
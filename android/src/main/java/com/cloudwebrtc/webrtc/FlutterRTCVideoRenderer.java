@@ -3,7 +3,7 @@ package com.cloudwebrtc.webrtc;
 import android.util.Log;
 import android.graphics.SurfaceTexture;
 
-import com.cloudwebrtc.webrtc.utils.AnyThreadSink;
+import com.cloudwebrtc.webrtc.utils.BatchingEventSink;
 import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
 import com.cloudwebrtc.webrtc.utils.EglUtils;
 
@@ -27,10 +27,29 @@ public class FlutterRTCVideoRenderer implements EventChannel.StreamHandler {
 
     private String ownerTag;
 
+    /**
+     * Renderers drawn on at most this many pixels are capped to {@link #thumbnailFps}, 0
+     * disables the cap.
+     */
+    static int thumbnailMaxPixels = 0;
+    static float thumbnailFps = 15f;
+
+    private float maxFps = Float.POSITIVE_INFINITY;
+    private float appliedFps = Float.POSITIVE_INFINITY;
+    private int renderedWidth = 0;
+    private int renderedHeight = 0;
+
+    /**
+     * Whether the texture is on screen; hidden renderers are not attached to
+     * {@link #videoTrack}, so they receive and draw no frames.
+     */
+    private boolean visible = true;
+
     public void Dispose() {
         //destroy
         if (surfaceTextureRenderer != null) {
             surfaceTextureRenderer.release();
+            initialized = false;
         }
         if (eventChannel != null)
             eventChannel.setStreamHandler(null);
@@ -39,6 +58,84 @@ public class FlutterRTCVideoRenderer implements EventChannel.StreamHandler {
         entry.release();
     }
 
+    /**
+     * Detaches the rendered track and clears the texture, keeping the texture entry, event
+     * channel and EGL resources for the next {@code createVideoRenderer}.
+     */
+    void park() {
+        setStream(null, null);
+        eventSink = null;
+        visible = true;
+        maxFps = Float.POSITIVE_INFINITY;
+        renderedWidth = 0;
+        renderedHeight = 0;
+        applyFpsReduction();
+        surfaceTextureRenderer.clearImage();
+    }
+
+    /**
+     * Detaches the renderer from {@link #videoTrack} while hidden and attaches it again when
+     * visible, then reports the change with a {@code didChangeVisibility} event.
+     */
+    public void setVisible(boolean visible) {
+        if (this.visible == visible) {
+            return;
+        }
+        this.visible = visible;
+        if (videoTrack != null) {
+            if (visible) {
+                videoTrack.addSink(surfaceTextureRenderer);
+            } else {
+                removeRendererFromVideoTrack();
+            }
+        }
+        ConstraintsMap params = new ConstraintsMap();
+        params.putString("event", "didChangeVisibility");
+        params.putInt("id", id);
+        params.putBoolean("visible", visible);
+        if (eventSink != null) {
+            eventSink.success(params.toMap());
+        }
+    }
+
+    /**
+     * Limits the framerate drawn into the texture, {@code fps <= 0} removes the limit.
+     */
+    public void setMaxFps(float fps) {
+        maxFps = fps > 0 ? fps : Float.POSITIVE_INFINITY;
+        applyFpsReduction();
+    }
+
+    /**
+     * Sets the size in physical pixels the texture is drawn at, used to cap the framerate of
+     * thumbnails.
+     */
+    public void setRenderedSize(int width, int height) {
+        renderedWidth = width;
+        renderedHeight = height;
+        applyFpsReduction();
+    }
+
+    /**
+     * Applies the lower of {@link #maxFps} and, for thumbnails, {@link #thumbnailFps}.
+     */
+    void applyFpsReduction() {
+        float fps = maxFps;
+        if (thumbnailMaxPixels > 0 && renderedWidth > 0 && renderedHeight > 0
+                && (long) renderedWidth * renderedHeight <= thumbnailMaxPixels) {
+            fps = Math.min(fps, thumbnailFps);
+        }
+        if (fps == appliedFps) {
+            return;
+        }
+        appliedFps = fps;
+        if (fps == Float.POSITIVE_INFINITY) {
+            surfaceTextureRenderer.disableFpsReduction();
+        } else {
+            surfaceTextureRenderer.setFpsReduction(fps);
+        }
+    }
+
     /**
      * The {@code RendererEvents} which listens to rendering events reported by
      * {@link #surfaceTextureRenderer}.
@@ -92,6 +189,13 @@ public class FlutterRTCVideoRenderer implements EventChannel.StreamHandler {
 
     private final SurfaceTextureRenderer surfaceTextureRenderer;
 
+    /**
+     * Whether {@link #surfaceTextureRenderer} holds its EGL context, surface and render thread.
+     * {@link EglBase#getEglBaseContext()} wraps the root context in a new object on every call,
+     * so the contexts cannot be compared instead.
+     */
+    private boolean initialized;
+
     /**
      * The {@code VideoTrack}, if any, rendered by this {@code FlutterRTCVideoRenderer}.
      */
@@ -105,6 +209,7 @@ public class FlutterRTCVideoRenderer implements EventChannel.StreamHandler {
         listenRendererEvents();
         surfaceTextureRenderer.init(EglUtils.getRootEglBaseContext(), rendererEvents);
         surfaceTextureRenderer.surfaceCreated(texture);
+        initialized = true;
 
         this.texture = texture;
         this.eventSink = null;
@@ -120,9 +225,13 @@ public class FlutterRTCVideoRenderer implements EventChannel.StreamHandler {
         this.id = id;
     }
 
+    public int getId() {
+        return id;
+    }
+
     @Override
     public void onListen(Object o, EventChannel.EventSink sink) {
-        eventSink = new AnyThreadSink(sink);
+        eventSink = new BatchingEventSink(sink, true);
     }
 
     @Override
@@ -235,12 +344,21 @@ public class FlutterRTCVideoRenderer implements EventChannel.StreamHandler {
                 return;
             }
 
-            surfaceTextureRenderer.release();
             listenRendererEvents();
-            surfaceTextureRenderer.init(sharedContext, rendererEvents);
-            surfaceTextureRenderer.surfaceCreated(texture);
+            if (initialized) {
+                // Switching tracks: keep the EGL context, surface and render thread, only
+                // report the first frame and size of the new track again.
+                surfaceTextureRenderer.resetFrameState(rendererEvents);
+            } else {
+                surfaceTextureRenderer.release();
+                surfaceTextureRenderer.init(sharedContext, rendererEvents);
+                surfaceTextureRenderer.surfaceCreated(texture);
+                initialized = true;
+            }
 
-            videoTrack.addSink(surfaceTextureRenderer);
+            if (visible) {
+                videoTrack.addSink(surfaceTextureRenderer);
+            }
         }
     }
 
@@ -23,6 +23,7 @@ import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.PluginRegistry.Registrar;
+import io.flutter.plugin.common.StandardMethodCodec;
 import io.flutter.view.TextureRegistry;
 
 /**
@@ -33,7 +34,15 @@ public class FlutterWebRTCPlugin implements FlutterPlugin, ActivityAware, EventC
     static public final String TAG = "FlutterWebRTCPlugin";
     private static Application application;
 
+    /**
+     * When set, the PeerConnectionFactory is initialized on a background thread as soon
+     * as the plugin is attached to an engine instead of on the first method call.
+     * Must be set before the engine is created, e.g. in {@code Application.onCreate()}.
+     */
+    public static boolean warmUpOnAttach = false;
+
     private MethodChannel methodChannel;
+    private MethodChannel backgroundMethodChannel;
     private MethodCallHandlerImpl methodCallHandler;
     private LifeCycleObserver observer;
     private Lifecycle lifecycle;
@@ -108,8 +117,13 @@ public class FlutterWebRTCPlugin implements FlutterPlugin, ActivityAware, EventC
                                 TextureRegistry textureRegistry) {
         AudioSwitchManager.instance = new AudioSwitchManager(context);
         methodCallHandler = new MethodCallHandlerImpl(context, messenger, textureRegistry);
+        if (warmUpOnAttach) {
+            methodCallHandler.warmUp();
+        }
         methodChannel = new MethodChannel(messenger, "FlutterWebRTC.Method");
         methodChannel.setMethodCallHandler(methodCallHandler);
+        backgroundMethodChannel = createBackgroundMethodChannel(messenger);
+        backgroundMethodChannel.setMethodCallHandler(methodCallHandler);
         eventChannel = new EventChannel( messenger,"FlutterWebRTC.Event");
         eventChannel.setStreamHandler(this);
         AudioSwitchManager.instance.audioDeviceChangeListener = (devices, currentDevice) -> {
@@ -125,6 +139,7 @@ public class FlutterWebRTCPlugin implements FlutterPlugin, ActivityAware, EventC
         methodCallHandler.dispose();
         methodCallHandler = null;
         methodChannel.setMethodCallHandler(null);
+        backgroundMethodChannel.setMethodCallHandler(null);
         eventChannel.setStreamHandler(null);
         if (AudioSwitchManager.instance != null) {
             Log.d(TAG, "Stopping the audio manager...");
@@ -132,6 +147,27 @@ public class FlutterWebRTCPlugin implements FlutterPlugin, ActivityAware, EventC
         }
     }
 
+    /**
+     * Creates the channel carrying the high-frequency, UI independent method calls
+     * (addCandidate, getStats, dataChannelSend, ...). Their messages are decoded and
+     * handled on a background task queue, or on the platform thread when the
+     * embedding does not support task queues.
+     *
+     * Messages on the two channels are not ordered with each other: the Dart side holds
+     * a call back until the calls of the same peer connection or track made on the other
+     * channel have completed.
+     */
+    private static MethodChannel createBackgroundMethodChannel(BinaryMessenger messenger) {
+        try {
+            BinaryMessenger.TaskQueue taskQueue = messenger.makeBackgroundTaskQueue();
+            return new MethodChannel(messenger, "FlutterWebRTC.Method.Background",
+                    StandardMethodCodec.INSTANCE, taskQueue);
+        } catch (NoSuchMethodError | UnsupportedOperationException e) {
+            Log.w(TAG, "Background task queues are not supported, using the platform thread.");
+            return new MethodChannel(messenger, "FlutterWebRTC.Method.Background");
+        }
+    }
+
     @Override
     public void onListen(Object arguments, EventChannel.EventSink events) {
         eventSink = new AnyThreadSink(events);
@@ -11,6 +11,8 @@ import android.hardware.Camera.CameraInfo;
 import android.media.AudioDeviceInfo;
 import android.media.AudioManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.util.LongSparseArray;
 
@@ -24,11 +26,14 @@ import com.cloudwebrtc.webrtc.record.AudioChannel;
 import com.cloudwebrtc.webrtc.record.FrameCapturer;
 import com.cloudwebrtc.webrtc.utils.AnyThreadResult;
 import com.cloudwebrtc.webrtc.utils.Callback;
+import com.cloudwebrtc.webrtc.utils.BoundedEventQueue;
 import com.cloudwebrtc.webrtc.utils.ConstraintsArray;
 import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
 import com.cloudwebrtc.webrtc.utils.EglUtils;
+import com.cloudwebrtc.webrtc.utils.IdAllocator;
 import com.cloudwebrtc.webrtc.utils.ObjectType;
 import com.cloudwebrtc.webrtc.utils.PermissionUtils;
+import com.cloudwebrtc.webrtc.utils.SerialExecutor;
 
 import com.twilio.audioswitch.AudioDevice;
 
@@ -62,6 +67,7 @@ import org.webrtc.RtpSender;
 import org.webrtc.SdpObserver;
 import org.webrtc.SessionDescription;
 import org.webrtc.SessionDescription.Type;
+import org.webrtc.ThreadUtils;
 import org.webrtc.VideoTrack;
 import org.webrtc.WrappedVideoDecoderFactory;
 import org.webrtc.audio.AudioDeviceModule;
@@ -72,11 +78,24 @@ import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.EventChannel;
@@ -89,14 +108,65 @@ import io.flutter.view.TextureRegistry.SurfaceTextureEntry;
 public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
   static public final String TAG = "FlutterWebRTCPlugin";
 
-  private final Map<String, PeerConnectionObserver> mPeerConnectionObservers = new HashMap<>();
+  /**
+   * Methods which only call into WebRTC, handled on the serial executor of their peer
+   * connection when it has one. The other methods of such a peer connection create or tear
+   * down event channels, textures, message handlers or main thread handlers, which have to
+   * be done on the platform thread; they are still queued on the executor to keep the order
+   * of the calls, and run on the platform thread from there.
+   */
+  private static final Set<String> SERIAL_EXECUTOR_METHODS = new HashSet<>(Arrays.asList(
+      "addCandidate",
+      "addCandidates",
+      "addStream",
+      "addTrack",
+      "addTransceiver",
+      "createAnswer",
+      "createOffer",
+      "dataChannelSend",
+      "dataChannelSendBatch",
+      "dataChannelSetCompression",
+      "dataChannelSetFlowControl",
+      "getDataChannelMetrics",
+      "getEventQueueStats",
+      "getLocalDescription",
+      "getReceivers",
+      "getRemoteDescription",
+      "getSenders",
+      "getStats",
+      "getTransceivers",
+      "mediaStreamTrackSetEnable",
+      "removeStream",
+      "removeTrack",
+      "restartIce",
+      "rtpSenderReplaceTrack",
+      "rtpSenderSetParameters",
+      "rtpSenderSetStreams",
+      "rtpSenderSetTrack",
+      "rtpTransceiverGetCurrentDirection",
+      "rtpTransceiverGetDirection",
+      "rtpTransceiverSetDirection",
+      "rtpTransceiverStop",
+      "sendDtmf",
+      "setCodecPreferences",
+      "setConfiguration",
+      "setLocalDescription",
+      "setRemoteDescription",
+      "setVolume"));
+
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  private final Map<String, PeerConnectionObserver> mPeerConnectionObservers = new ConcurrentHashMap<>();
   private final BinaryMessenger messenger;
   private final Context context;
   private final TextureRegistry textures;
   private PeerConnectionFactory mFactory;
-  private final Map<String, MediaStream> localStreams = new HashMap<>();
-  private final Map<String, MediaStreamTrack> localTracks = new HashMap<>();
+  private final Map<String, MediaStream> localStreams = new ConcurrentHashMap<>();
+  private final Map<String, MediaStreamTrack> localTracks = new ConcurrentHashMap<>();
   private final LongSparseArray<FlutterRTCVideoRenderer> renders = new LongSparseArray<>();
+  private final VideoRendererPool rendererPool = new VideoRendererPool();
+  private final RemoteMediaIndex remoteMediaIndex = new RemoteMediaIndex();
+  private final IdAllocator idAllocator = new IdAllocator();
 
   /**
    * The implementation of {@code getUserMedia} extracted into a separate file in order to reduce
@@ -110,6 +180,26 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
 
   private Activity activity;
 
+  /**
+   * Thread pool backing the per peer connection {@link SerialExecutor}s, created on first use.
+   */
+  private ExecutorService peerConnectionThreadPool;
+
+  /**
+   * Timer thread of the stats subscriptions, created on first use.
+   */
+  private ScheduledExecutorService statsScheduler;
+
+  /**
+   * Completes once the background initialization started by {@link #warmUp()} is done,
+   * {@code null} when the factory is initialized lazily by the first method call.
+   */
+  @Nullable
+  private volatile Future<?> initialization;
+
+  /** Written by the thread which initialized the factory, read by method calls. */
+  private volatile long initializationTimeMs = -1;
+
   MethodCallHandlerImpl(Context context, BinaryMessenger messenger, TextureRegistry textureRegistry) {
     this.context = context;
     this.textures = textureRegistry;
@@ -136,13 +226,48 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
       peerConnectionDispose(connection);
     }
     mPeerConnectionObservers.clear();
+    rendererPool.clear();
+    if (peerConnectionThreadPool != null) {
+      peerConnectionThreadPool.shutdown();
+      peerConnectionThreadPool = null;
+    }
+    if (statsScheduler != null) {
+      statsScheduler.shutdown();
+      statsScheduler = null;
+    }
+  }
+
+  /**
+   * Starts initializing the {@link PeerConnectionFactory} on a background thread so that
+   * the first method call does not pay for it on the platform thread.
+   */
+  void warmUp() {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    initialization = executor.submit(this::ensureInitialized);
+    executor.shutdown();
   }
 
-  private void ensureInitialized() {
+  private void awaitInitialized() {
+    if (initialization != null) {
+      try {
+        initialization.get();
+      } catch (ExecutionException e) {
+        Log.e(TAG, "PeerConnectionFactory warm-up failed", e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    // Initializes inline if there was no warm-up or it failed.
+    ensureInitialized();
+  }
+
+  private synchronized void ensureInitialized() {
     if (mFactory != null) {
       return;
     }
 
+    final long startTime = System.nanoTime();
+
     PeerConnectionFactory.initialize(
             InitializationOptions.builder(context)
                     .setEnableInternalTracer(true)
@@ -169,13 +294,65 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
             .setVideoDecoderFactory(new WrappedVideoDecoderFactory(eglContext))
             .setAudioDeviceModule(audioDeviceModule)
             .createPeerConnectionFactory();
+
+    initializationTimeMs = (System.nanoTime() - startTime) / 1000000;
+    Log.d(TAG, "PeerConnectionFactory initialized in " + initializationTimeMs + "ms on "
+            + Thread.currentThread().getName());
   }
 
   @Override
   public void onMethodCall(MethodCall call, @NonNull Result notSafeResult) {
-    ensureInitialized();
+    awaitInitialized();
 
     final AnyThreadResult result = new AnyThreadResult(notSafeResult);
+    PeerConnectionObserver pco = getPeerConnectionObserverForCall(call);
+    Executor executor = pco != null ? pco.getExecutor() : null;
+    if (executor == null) {
+      handleMethodCall(call, result);
+    } else if (SERIAL_EXECUTOR_METHODS.contains(call.method)) {
+      executor.execute(() -> handleQueuedMethodCall(call, result));
+    } else {
+      executor.execute(() -> runOnPlatformThread(() -> handleQueuedMethodCall(call, result)));
+    }
+  }
+
+  private void handleQueuedMethodCall(MethodCall call, Result result) {
+    try {
+      handleMethodCall(call, result);
+    } catch (Exception e) {
+      resultError(call.method, e.getMessage(), result);
+    }
+  }
+
+  /**
+   * Runs {@code task} on the platform thread and waits for it, so that the serial executor
+   * calling this does not start the next call of the peer connection before.
+   */
+  private void runOnPlatformThread(Runnable task) {
+    CountDownLatch done = new CountDownLatch(1);
+    mainHandler.post(() -> {
+      try {
+        task.run();
+      } finally {
+        done.countDown();
+      }
+    });
+    ThreadUtils.awaitUninterruptibly(done);
+  }
+
+  @Nullable
+  private PeerConnectionObserver getPeerConnectionObserverForCall(MethodCall call) {
+    if (!(call.arguments instanceof Map)) {
+      return null;
+    }
+    Object peerConnectionId = ((Map<?, ?>) call.arguments).get("peerConnectionId");
+    if (!(peerConnectionId instanceof String)) {
+      return null;
+    }
+    return mPeerConnectionObservers.get(peerConnectionId);
+  }
+
+  private void handleMethodCall(MethodCall call, Result result) {
     switch (call.method) {
       case "createPeerConnection": {
         Map<String, Object> constraints = call.argument("constraints");
@@ -275,10 +452,10 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
         String tone = call.argument("tone");
         int duration = call.argument("duration");
         int gap = call.argument("gap");
-        PeerConnection peerConnection = getPeerConnection(peerConnectionId);
-        if (peerConnection != null) {
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco != null && pco.getPeerConnection() != null) {
           RtpSender audioSender = null;
-          for (RtpSender sender : peerConnection.getSenders()) {
+          for (RtpSender sender : pco.getRtpSenders()) {
 
             if (sender.track().kind().equals("audio")) {
               audioSender = sender;
@@ -300,10 +477,146 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
         peerConnectionAddICECandidate(new ConstraintsMap(candidate), peerConnectionId, result);
         break;
       }
+      case "addCandidates": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        List<Map<String, Object>> candidates = call.argument("candidates");
+        peerConnectionAddICECandidates(candidates, peerConnectionId, result);
+        break;
+      }
       case "getStats": {
         String peerConnectionId = call.argument("peerConnectionId");
         String trackId = call.argument("trackId");
-        peerConnectionGetStats(trackId, peerConnectionId, result);
+        Map<String, Object> filter = call.argument("filter");
+        peerConnectionGetStats(trackId, peerConnectionId, StatsFilter.fromMap(filter), result);
+        break;
+      }
+      case "getStatsForAll": {
+        List<String> peerConnectionIds = call.argument("peerConnectionIds");
+        Map<String, Object> filter = call.argument("filter");
+        Number timeoutMs = call.argument("timeoutMs");
+        long timeout = timeoutMs != null ? timeoutMs.longValue() : 2000;
+        if (peerConnectionIds == null) {
+          resultError("getStatsForAll", "peerConnectionIds is required", result);
+        } else if (timeout <= 0) {
+          resultError("getStatsForAll", "timeoutMs must be positive", result);
+        } else {
+          getStatsForAll(peerConnectionIds, StatsFilter.fromMap(filter), timeout, result);
+        }
+        break;
+      }
+      case "subscribeStats": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        Number intervalMs = call.argument("intervalMs");
+        Map<String, Object> filter = call.argument("filter");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("subscribeStats", "peerConnection is null", result);
+        } else if (intervalMs == null || intervalMs.longValue() <= 0) {
+          resultError("subscribeStats", "intervalMs must be positive", result);
+        } else {
+          pco.subscribeStats(intervalMs.longValue(), StatsFilter.fromMap(filter), getStatsScheduler());
+          result.success(null);
+        }
+        break;
+      }
+      case "unsubscribeStats": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null) {
+          resultError("unsubscribeStats", "peerConnection is null", result);
+        } else {
+          pco.unsubscribeStats();
+          result.success(null);
+        }
+        break;
+      }
+      case "startCallQualityMonitor": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        Number sampleIntervalMs = call.argument("sampleIntervalMs");
+        Integer windowSize = call.argument("windowSize");
+        Number reportIntervalMs = call.argument("reportIntervalMs");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("startCallQualityMonitor", "peerConnection is null", result);
+          break;
+        }
+        long sampleInterval = sampleIntervalMs != null ? sampleIntervalMs.longValue() : 1000;
+        if (sampleInterval <= 0) {
+          resultError("startCallQualityMonitor", "sampleIntervalMs must be positive", result);
+          break;
+        }
+        pco.startCallQualityMonitor(sampleInterval,
+            windowSize != null ? windowSize : 5,
+            reportIntervalMs != null ? reportIntervalMs.longValue() : sampleInterval,
+            getStatsScheduler());
+        result.success(null);
+        break;
+      }
+      case "stopCallQualityMonitor": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null) {
+          resultError("stopCallQualityMonitor", "peerConnection is null", result);
+        } else {
+          pco.stopCallQualityMonitor();
+          result.success(null);
+        }
+        break;
+      }
+      case "startStatsRecorder": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        Map<String, List<String>> members = call.argument("members");
+        Number sampleIntervalMs = call.argument("sampleIntervalMs");
+        Number windowMs = call.argument("windowMs");
+        Number memoryBudget = call.argument("memoryBudget");
+        Integer maxSeries = call.argument("maxSeries");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("startStatsRecorder", "peerConnection is null", result);
+          break;
+        }
+        long sampleInterval = sampleIntervalMs != null ? sampleIntervalMs.longValue() : 1000;
+        long window = windowMs != null ? windowMs.longValue() : 10 * 60 * 1000;
+        long budget = memoryBudget != null ? memoryBudget.longValue() : 1024 * 1024;
+        int series = maxSeries != null ? maxSeries : 64;
+        if (members == null || sampleInterval <= 0 || window <= 0) {
+          resultError("startStatsRecorder", "members, a positive sampleIntervalMs and windowMs are required", result);
+          break;
+        }
+        if (budget <= 0 || budget > StatsRecorder.MAX_MEMORY_BUDGET) {
+          resultError("startStatsRecorder", "memoryBudget must be between 1 and "
+              + StatsRecorder.MAX_MEMORY_BUDGET + " bytes", result);
+          break;
+        }
+        if (series <= 0) {
+          resultError("startStatsRecorder", "maxSeries must be positive", result);
+          break;
+        }
+        pco.startStatsRecorder(members, sampleInterval, window, budget, series, getStatsScheduler());
+        result.success(null);
+        break;
+      }
+      case "stopStatsRecorder": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null) {
+          resultError("stopStatsRecorder", "peerConnection is null", result);
+        } else {
+          pco.stopStatsRecorder();
+          result.success(null);
+        }
+        break;
+      }
+      case "exportStatsHistory": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        String path = call.argument("path");
+        String format = call.argument("format");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null) {
+          resultError("exportStatsHistory", "peerConnection is null", result);
+        } else {
+          pco.exportStatsHistory(path, format, getStatsScheduler(), result);
+        }
         break;
       }
       case "createDataChannel": {
@@ -329,6 +642,18 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
         result.success(null);
         break;
       }
+      case "dataChannelSendBatch": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        String dataChannelId = call.argument("dataChannelId");
+        List<Map<String, Object>> messages = call.argument("messages");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("dataChannelSendBatch", "peerConnection is null", result);
+          break;
+        }
+        pco.dataChannelSendBatch(dataChannelId, messages, result);
+        break;
+      }
       case "dataChannelClose": {
         String peerConnectionId = call.argument("peerConnectionId");
         String dataChannelId = call.argument("dataChannelId");
@@ -336,6 +661,122 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
         result.success(null);
         break;
       }
+      case "dataChannelSetRawMessages": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        String dataChannelId = call.argument("dataChannelId");
+        Boolean enabled = call.argument("enabled");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("dataChannelSetRawMessages", "peerConnection is null", result);
+        } else {
+          pco.dataChannelSetRawMessages(dataChannelId, enabled == null || enabled, result);
+        }
+        break;
+      }
+      case "getDataChannelMetrics": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        String dataChannelId = call.argument("dataChannelId");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("getDataChannelMetrics", "peerConnection is null", result);
+        } else {
+          pco.getDataChannelMetrics(dataChannelId, result);
+        }
+        break;
+      }
+      case "getEventQueueStats": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null) {
+          resultError("getEventQueueStats", "peerConnection is null", result);
+        } else {
+          result.success(pco.getEventQueueStats().toMap());
+        }
+        break;
+      }
+      case "dataChannelSetMetricsInterval": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        String dataChannelId = call.argument("dataChannelId");
+        Number intervalMs = call.argument("intervalMs");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("dataChannelSetMetricsInterval", "peerConnection is null", result);
+        } else {
+          pco.dataChannelSetMetricsInterval(dataChannelId,
+              intervalMs == null ? 0 : intervalMs.longValue(), result);
+        }
+        break;
+      }
+      case "dataChannelSetCompression": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        String dataChannelId = call.argument("dataChannelId");
+        Boolean enabled = call.argument("enabled");
+        Integer threshold = call.argument("threshold");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("dataChannelSetCompression", "peerConnection is null", result);
+        } else {
+          pco.dataChannelSetCompression(dataChannelId, enabled == null || enabled,
+              threshold != null ? threshold : DataChannelCompression.DEFAULT_THRESHOLD, result);
+        }
+        break;
+      }
+      case "dataChannelSetFlowControl": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        String dataChannelId = call.argument("dataChannelId");
+        Number highWatermark = call.argument("highWatermark");
+        Number lowWatermark = call.argument("lowWatermark");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("dataChannelSetFlowControl", "peerConnection is null", result);
+        } else {
+          pco.dataChannelSetFlowControl(dataChannelId,
+              highWatermark == null ? 0 : highWatermark.longValue(),
+              lowWatermark == null ? 0 : lowWatermark.longValue(), result);
+        }
+        break;
+      }
+      case "dataChannelSendFile": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        String dataChannelId = call.argument("dataChannelId");
+        String path = call.argument("path");
+        Integer chunkSize = call.argument("chunkSize");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("dataChannelSendFile", "peerConnection is null", result);
+        } else {
+          pco.dataChannelSendFile(dataChannelId, path,
+              chunkSize != null ? chunkSize : ChunkedTransfer.DEFAULT_CHUNK_SIZE,
+              getPeerConnectionThreadPool(), result);
+        }
+        break;
+      }
+      case "dataChannelReceiveTransfers": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        String dataChannelId = call.argument("dataChannelId");
+        String directory = call.argument("directory");
+        Integer maxBufferSize = call.argument("maxBufferSize");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("dataChannelReceiveTransfers", "peerConnection is null", result);
+        } else {
+          pco.dataChannelReceiveTransfers(dataChannelId, directory, maxBufferSize,
+              getPeerConnectionThreadPool(), result);
+        }
+        break;
+      }
+      case "dataChannelCancelTransfer": {
+        String peerConnectionId = call.argument("peerConnectionId");
+        String dataChannelId = call.argument("dataChannelId");
+        Integer transferId = call.argument("transferId");
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+          resultError("dataChannelCancelTransfer", "peerConnection is null", result);
+        } else {
+          pco.dataChannelCancelTransfer(dataChannelId, transferId, result);
+        }
+        break;
+      }
       case "streamDispose": {
         String streamId = call.argument("streamId");
         streamDispose(streamId);
@@ -394,6 +835,14 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
         break;
       }
       case "createVideoRenderer": {
+        FlutterRTCVideoRenderer pooled = rendererPool.acquire();
+        if (pooled != null) {
+          renders.put(pooled.getId(), pooled);
+          ConstraintsMap params = new ConstraintsMap();
+          params.putInt("textureId", pooled.getId());
+          result.success(params.toMap());
+          break;
+        }
         SurfaceTextureEntry entry = textures.createSurfaceTexture();
         SurfaceTexture surfaceTexture = entry.surfaceTexture();
         FlutterRTCVideoRenderer render = new FlutterRTCVideoRenderer(surfaceTexture, entry);
@@ -420,11 +869,75 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
           resultError("videoRendererDispose", "render [" + textureId + "] not found !", result);
           return;
         }
-        render.Dispose();
         renders.delete(textureId);
+        rendererPool.release(render);
+        result.success(null);
+        break;
+      }
+      case "videoRendererSetMaxFps": {
+        int textureId = call.argument("textureId");
+        Number fps = call.argument("fps");
+        FlutterRTCVideoRenderer render = renders.get(textureId);
+        if (render == null) {
+          resultError("videoRendererSetMaxFps", "render [" + textureId + "] not found !", result);
+          return;
+        }
+        render.setMaxFps(fps != null ? fps.floatValue() : 0);
+        result.success(null);
+        break;
+      }
+      case "videoRendererSetRenderedSize": {
+        int textureId = call.argument("textureId");
+        int width = call.argument("width");
+        int height = call.argument("height");
+        FlutterRTCVideoRenderer render = renders.get(textureId);
+        if (render == null) {
+          resultError("videoRendererSetRenderedSize", "render [" + textureId + "] not found !", result);
+          return;
+        }
+        render.setRenderedSize(width, height);
+        result.success(null);
+        break;
+      }
+      case "videoRendererSetVisible": {
+        int textureId = call.argument("textureId");
+        boolean visible = call.argument("visible");
+        FlutterRTCVideoRenderer render = renders.get(textureId);
+        if (render == null) {
+          resultError("videoRendererSetVisible", "render [" + textureId + "] not found !", result);
+          return;
+        }
+        render.setVisible(visible);
+        result.success(null);
+        break;
+      }
+      case "setVideoRendererThumbnailPolicy": {
+        Integer maxPixels = call.argument("maxPixels");
+        Number fps = call.argument("fps");
+        if (maxPixels != null) {
+          FlutterRTCVideoRenderer.thumbnailMaxPixels = Math.max(0, maxPixels);
+        }
+        if (fps != null && fps.floatValue() > 0) {
+          FlutterRTCVideoRenderer.thumbnailFps = fps.floatValue();
+        }
+        for (int i = 0; i < renders.size(); i++) {
+          renders.valueAt(i).applyFpsReduction();
+        }
+        result.success(null);
+        break;
+      }
+      case "setVideoRendererPoolOptions": {
+        Integer maxSize = call.argument("maxSize");
+        if (maxSize != null) {
+          rendererPool.setMaxSize(maxSize);
+        }
         result.success(null);
         break;
       }
+      case "getVideoRendererPoolStats": {
+        result.success(rendererPool.getStats().toMap());
+        break;
+      }
       case "videoRendererSetSrcObject": {
         int textureId = call.argument("textureId");
         String streamId = call.argument("streamId");
@@ -729,6 +1242,55 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
         result.success(capabilitiestoMap(capabilities).toMap());
         break;
       }
+      case "getFactoryInitializationTime": {
+        ConstraintsMap params = new ConstraintsMap();
+        params.putLong("initTimeMs", initializationTimeMs);
+        params.putBoolean("warmUp", initialization != null);
+        result.success(params.toMap());
+        break;
+      }
+      case "setEventQueueOptions": {
+        Integer capacity = call.argument("capacity");
+        Number byteBudget = call.argument("byteBudget");
+        String policy = call.argument("policy");
+        // Validate everything first, a rejected call must not change any default.
+        if (capacity != null && capacity <= 0) {
+          resultError("setEventQueueOptions", "capacity must be positive", result);
+          return;
+        }
+        if (byteBudget != null && byteBudget.longValue() <= 0) {
+          resultError("setEventQueueOptions", "byteBudget must be positive", result);
+          return;
+        }
+        BoundedEventQueue.OverflowPolicy overflowPolicy = null;
+        if (policy != null) {
+          switch (policy) {
+            case "dropOldest":
+              overflowPolicy = BoundedEventQueue.OverflowPolicy.DROP_OLDEST;
+              break;
+            case "dropNewest":
+              overflowPolicy = BoundedEventQueue.OverflowPolicy.DROP_NEWEST;
+              break;
+            case "coalesceByKey":
+              overflowPolicy = BoundedEventQueue.OverflowPolicy.COALESCE_BY_KEY;
+              break;
+            default:
+              resultError("setEventQueueOptions", "unknown policy " + policy, result);
+              return;
+          }
+        }
+        if (capacity != null) {
+          BoundedEventQueue.defaultCapacity = capacity;
+        }
+        if (byteBudget != null) {
+          BoundedEventQueue.defaultByteBudget = byteBudget.longValue();
+        }
+        if (overflowPolicy != null) {
+          BoundedEventQueue.defaultPolicy = overflowPolicy;
+        }
+        result.success(null);
+        break;
+      }
       case "setCodecPreferences":
         String peerConnectionId = call.argument("peerConnectionId");
         List<Map<String, Object>> codecs = call.argument("codecs");
@@ -1072,6 +1634,20 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
     String peerConnectionId = getNextStreamUUID();
     RTCConfiguration conf = parseRTCConfiguration(configuration);
     PeerConnectionObserver observer = new PeerConnectionObserver(conf, this, messenger, peerConnectionId);
+    // serialExecutor (android only): handle the method calls of this peer connection
+    // in order on a background thread instead of the platform thread, see
+    // SERIAL_EXECUTOR_METHODS.
+    if (configuration != null && configuration.hasKey("serialExecutor")
+            && configuration.getType("serialExecutor") == ObjectType.Boolean
+            && configuration.getBoolean("serialExecutor")) {
+      observer.setExecutor(new SerialExecutor(getPeerConnectionThreadPool()));
+    }
+    // iceCandidateBatchingInterval (android only): group gathered candidates into one
+    // onCandidates event per interval (ms) or until gathering completes.
+    if (configuration != null && configuration.hasKey("iceCandidateBatchingInterval")
+            && configuration.getType("iceCandidateBatchingInterval") == ObjectType.Number) {
+      observer.setCandidateBatchingInterval(configuration.getInt("iceCandidateBatchingInterval"));
+    }
     PeerConnection peerConnection
             = mFactory.createPeerConnection(
             conf,
@@ -1082,6 +1658,20 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
     return peerConnectionId;
   }
 
+  private synchronized ScheduledExecutorService getStatsScheduler() {
+    if (statsScheduler == null) {
+      statsScheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+    return statsScheduler;
+  }
+
+  private synchronized ExecutorService getPeerConnectionThreadPool() {
+    if (peerConnectionThreadPool == null) {
+      peerConnectionThreadPool = Executors.newCachedThreadPool();
+    }
+    return peerConnectionThreadPool;
+  }
+
   @Override
   public boolean putLocalStream(String streamId, MediaStream stream) {
     localStreams.put(streamId, stream);
@@ -1101,24 +1691,17 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
 
   @Override
   public String getNextStreamUUID() {
-    String uuid;
-
-    do {
-      uuid = UUID.randomUUID().toString();
-    } while (getStreamForId(uuid, "") != null);
-
-    return uuid;
+    return idAllocator.next();
   }
 
   @Override
   public String getNextTrackUUID() {
-    String uuid;
-
-    do {
-      uuid = UUID.randomUUID().toString();
-    } while (getTrackForId(uuid, null) != null);
+    return idAllocator.next();
+  }
 
-    return uuid;
+  @Override
+  public RemoteMediaIndex getRemoteMediaIndex() {
+    return remoteMediaIndex;
   }
 
   @Override
@@ -1156,14 +1739,7 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
         stream = pco.remoteStreams.get(id);
       }
     } else {
-      for (Entry<String, PeerConnectionObserver> entry : mPeerConnectionObservers
-              .entrySet()) {
-        PeerConnectionObserver pco = entry.getValue();
-        stream = pco.remoteStreams.get(id);
-        if (stream != null) {
-          break;
-        }
-      }
+      stream = remoteMediaIndex.getStream(id);
     }
     if (stream == null) {
       stream = localStreams.get(id);
@@ -1174,25 +1750,33 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
 
   private MediaStreamTrack getTrackForId(String trackId, String peerConnectionId) {
     MediaStreamTrack track = localTracks.get(trackId);
+    if (track != null) {
+      return track;
+    }
 
-    if (track == null) {
-      for (Entry<String, PeerConnectionObserver> entry : mPeerConnectionObservers.entrySet()) {
-        if (peerConnectionId != null && entry.getKey().compareTo(peerConnectionId) != 0)
-          continue;
-
-        PeerConnectionObserver pco = entry.getValue();
-        track = pco.remoteTracks.get(trackId);
-
-        if (track == null) {
+    if (peerConnectionId == null) {
+      track = remoteMediaIndex.getTrack(trackId);
+      if (track == null) {
+        // Receiver tracks of transceivers which have not been reported by onAddTrack yet.
+        for (PeerConnectionObserver pco : mPeerConnectionObservers.values()) {
           track = pco.getTransceiversTrack(trackId);
-        }
-
-        if (track != null) {
-          break;
+          if (track != null) {
+            break;
+          }
         }
       }
+      return track;
     }
 
+    PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+    if (pco == null) {
+      return null;
+    }
+    track = pco.remoteTracks.get(trackId);
+    if (track == null) {
+      // Receiver tracks of transceivers which have not been reported by onAddTrack yet.
+      track = pco.getTransceiversTrack(trackId);
+    }
     return track;
   }
 
@@ -1622,35 +2206,93 @@ public class MethodCallHandlerImpl implements MethodCallHandler, StateProvider {
     }
   }
 
+  private IceCandidate candidateFromMap(ConstraintsMap candidateMap) {
+    int sdpMLineIndex = 0;
+    if (!candidateMap.isNull("sdpMLineIndex")) {
+      sdpMLineIndex = candidateMap.getInt("sdpMLineIndex");
+    }
+    return new IceCandidate(
+        candidateMap.getString("sdpMid"),
+        sdpMLineIndex,
+        candidateMap.getString("candidate"));
+  }
+
   public void peerConnectionAddICECandidate(ConstraintsMap candidateMap, final String id,
                                             final Result result) {
     boolean res = false;
     PeerConnection peerConnection = getPeerConnection(id);
     if (peerConnection != null) {
-      int sdpMLineIndex = 0;
-      if (!candidateMap.isNull("sdpMLineIndex")) {
-        sdpMLineIndex = candidateMap.getInt("sdpMLineIndex");
-      }
-      IceCandidate candidate = new IceCandidate(
-          candidateMap.getString("sdpMid"),
-          sdpMLineIndex,
-          candidateMap.getString("candidate"));
-      res = peerConnection.addIceCandidate(candidate);
+      res = peerConnection.addIceCandidate(candidateFromMap(candidateMap));
     } else {
       resultError("peerConnectionAddICECandidate", "peerConnection is null", result);
     }
     result.success(res);
   }
 
-  public void peerConnectionGetStats(String trackId, String id, final Result result) {
+  public void peerConnectionAddICECandidates(List<Map<String, Object>> candidates, final String id,
+                                             final Result result) {
+    PeerConnection peerConnection = getPeerConnection(id);
+    if (peerConnection == null) {
+      resultError("peerConnectionAddICECandidates", "peerConnection is null", result);
+      return;
+    }
+    List<Boolean> res = new ArrayList<>(candidates == null ? 0 : candidates.size());
+    if (candidates != null) {
+      for (Map<String, Object> candidateMap : candidates) {
+        res.add(peerConnection.addIceCandidate(candidateFromMap(new ConstraintsMap(candidateMap))));
+      }
+    }
+    result.success(res);
+  }
+
+  /**
+   * Answers with the reports of every peer connection once they all arrived, or with those
+   * which arrived within {@code timeoutMs}; missing peer connections are left out.
+   */
+  private void getStatsForAll(List<String> peerConnectionIds, StatsFilter filter, long timeoutMs,
+      final Result result) {
+    Map<String, PeerConnection> peerConnections = new HashMap<>();
+    for (String id : peerConnectionIds) {
+      PeerConnectionObserver pco = id != null ? mPeerConnectionObservers.get(id) : null;
+      PeerConnection peerConnection = pco != null ? pco.getPeerConnection() : null;
+      if (peerConnection != null) {
+        peerConnections.put(id, peerConnection);
+      }
+    }
+    Map<String, Object> reports = new ConcurrentHashMap<>();
+    if (peerConnections.isEmpty()) {
+      result.success(reports);
+      return;
+    }
+    AtomicBoolean answered = new AtomicBoolean();
+    ScheduledFuture<?> deadline = getStatsScheduler().schedule(() -> {
+      if (answered.compareAndSet(false, true)) {
+        Log.w(TAG, "getStatsForAll(): " + (peerConnections.size() - reports.size())
+            + " peer connections did not answer within " + timeoutMs + " ms");
+        result.success(new HashMap<>(reports));
+      }
+    }, timeoutMs, TimeUnit.MILLISECONDS);
+    AtomicInteger pending = new AtomicInteger(peerConnections.size());
+    for (Map.Entry<String, PeerConnection> entry : peerConnections.entrySet()) {
+      entry.getValue().getStats(report -> {
+        reports.put(entry.getKey(), PeerConnectionObserver.statsReportToMap(report, filter));
+        if (pending.decrementAndGet() == 0 && answered.compareAndSet(false, true)) {
+          deadline.cancel(false);
+          result.success(new HashMap<>(reports));
+        }
+      });
+    }
+  }
+
+  public void peerConnectionGetStats(String trackId, String id, StatsFilter filter, final Result result) {
     PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
     if (pco == null || pco.getPeerConnection() == null) {
       resultError("peerConnectionGetStats", "peerConnection is null", result);
     } else {
       if(trackId == null || trackId.isEmpty()) {
-        pco.getStats(result);
+        pco.getStats(filter, result);
       } else {
-        pco.getStatsForTrack(trackId, result);
+        pco.getStatsForTrack(trackId, filter, result);
       }
     }
   }
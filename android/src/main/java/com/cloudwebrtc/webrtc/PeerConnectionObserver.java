@@ -1,21 +1,31 @@
 package com.cloudwebrtc.webrtc;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 
 import com.cloudwebrtc.webrtc.audio.AudioSwitchManager;
-import com.cloudwebrtc.webrtc.utils.AnyThreadSink;
+import com.cloudwebrtc.webrtc.utils.BatchingEventSink;
+import com.cloudwebrtc.webrtc.utils.BoundedEventQueue;
 import com.cloudwebrtc.webrtc.utils.ConstraintsArray;
 import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
+import com.cloudwebrtc.webrtc.utils.SerialExecutor;
 
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodChannel.Result;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -24,7 +34,10 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.webrtc.AudioTrack;
 import org.webrtc.CandidatePairChangeEvent;
@@ -45,23 +58,49 @@ import org.webrtc.VideoTrack;
 
 class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.StreamHandler {
   private final static String TAG = FlutterWebRTCPlugin.TAG;
-  private final Map<String, DataChannel> dataChannels = new HashMap<>();
+  private final Map<String, DataChannel> dataChannels = new ConcurrentHashMap<>();
+  private final Map<String, DataChannelObserver> dataChannelObservers = new ConcurrentHashMap<>();
   private final BinaryMessenger messenger;
   private final String id;
-  private PeerConnection peerConnection;
+  private volatile PeerConnection peerConnection;
   private final PeerConnection.RTCConfiguration configuration;
-  final Map<String, MediaStream> remoteStreams = new HashMap<>();
-  final Map<String, MediaStreamTrack> remoteTracks = new HashMap<>();
-  final Map<String, RtpTransceiver> transceivers = new HashMap<>();
+  final Map<String, MediaStream> remoteStreams = new ConcurrentHashMap<>();
+  final Map<String, MediaStreamTrack> remoteTracks = new ConcurrentHashMap<>();
+  private final RtpRegistry rtpRegistry;
   private final StateProvider stateProvider;
   private final EventChannel eventChannel;
   private EventChannel.EventSink eventSink;
+  /** Events raised before Dart starts listening. */
+  private final BoundedEventQueue eventQueue = new BoundedEventQueue();
+  /**
+   * Ordered executor for the method calls addressed to this peer connection,
+   * or {@code null} when they are handled on the platform thread.
+   */
+  @Nullable
+  private Executor executor;
+  @Nullable
+  private StatsSubscription statsSubscription;
+  @Nullable
+  private CallQualityMonitor callQualityMonitor;
+  /** Kept after the recording stops, so that the history can be exported after the call. */
+  @Nullable
+  private StatsRecorder statsRecorder;
+  /**
+   * When positive, gathered candidates are grouped into one {@code onCandidates} event
+   * sent at most this many milliseconds after the first one, or when gathering completes.
+   */
+  private int candidateBatchingInterval = 0;
+  private final List<Map<String, Object>> pendingCandidates = new ArrayList<>();
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Runnable flushCandidatesRunnable = this::flushCandidates;
 
   PeerConnectionObserver(PeerConnection.RTCConfiguration configuration, StateProvider stateProvider, BinaryMessenger messenger, String id) {
     this.configuration = configuration;
     this.stateProvider = stateProvider;
     this.messenger = messenger;
     this.id = id;
+    this.rtpRegistry = new RtpRegistry(stateProvider,
+        configuration.sdpSemantics == PeerConnection.SdpSemantics.UNIFIED_PLAN);
 
     eventChannel = new EventChannel(messenger, "FlutterWebRTC/peerConnectionEvent" + id);
     eventChannel.setStreamHandler(this);
@@ -75,20 +114,48 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
 
   @Override
   public void onListen(Object o, EventChannel.EventSink sink) {
-    eventSink = new AnyThreadSink(sink);
+    synchronized (eventQueue) {
+      // Looper-turn batching: frames stop while the app is in the background, and ICE,
+      // signaling and state events must keep flowing then.
+      eventSink = new BatchingEventSink(sink);
+      for (Object event : eventQueue.drain()) {
+        eventSink.success(event);
+      }
+      if (eventQueue.getDroppedCount() > 0 || eventQueue.getCoalescedCount() > 0) {
+        Log.w(TAG, "peerConnection " + id + ": dropped " + eventQueue.getDroppedCount()
+            + " and coalesced " + eventQueue.getCoalescedCount() + " events before listen");
+      }
+    }
   }
 
   @Override
   public void onCancel(Object o) {
-    eventSink = null;
+    synchronized (eventQueue) {
+      eventSink = null;
+    }
   }
 
+  @Nullable
   PeerConnection getPeerConnection() {
     return peerConnection;
   }
 
   void setPeerConnection(PeerConnection peerConnection) {
     this.peerConnection = peerConnection;
+    rtpRegistry.setPeerConnection(peerConnection);
+  }
+
+  @Nullable
+  Executor getExecutor() {
+    return executor;
+  }
+
+  void setExecutor(@Nullable Executor executor) {
+    this.executor = executor;
+  }
+
+  void setCandidateBatchingInterval(int candidateBatchingInterval) {
+    this.candidateBatchingInterval = candidateBatchingInterval;
   }
 
   void restartIce() {
@@ -96,14 +163,27 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
   }
 
   void close() {
+    unsubscribeStats();
+    stopCallQualityMonitor();
+    stopStatsRecorder();
+    handler.removeCallbacks(flushCandidatesRunnable);
+    synchronized (pendingCandidates) {
+      pendingCandidates.clear();
+    }
     peerConnection.close();
+    stateProvider.getRemoteMediaIndex().removePeerConnection(id);
     remoteStreams.clear();
     remoteTracks.clear();
     dataChannels.clear();
+    dataChannelObservers.clear();
+    rtpRegistry.clear();
   }
 
   void dispose() {
     this.close();
+    PeerConnection peerConnection = this.peerConnection;
+    // Stats collectors check for null before using the peer connection.
+    setPeerConnection(null);
     peerConnection.dispose();
     eventChannel.setStreamHandler(null);
   }
@@ -135,7 +215,19 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     String flutterId = getNextDataChannelUUID();
     if (dataChannel != null) {
       dataChannels.put(flutterId, dataChannel);
-      registerDataChannelObserver(flutterId, dataChannel);
+      DataChannelObserver observer = registerDataChannelObserver(flutterId, dataChannel);
+      if (config != null && config.hasKey("rawMessages")) {
+        observer.setRawMessages(config.getBoolean("rawMessages"));
+      }
+      if (config != null && config.hasKey("compression")) {
+        observer.setCompression(config.getBoolean("compression"),
+            config.hasKey("compressionThreshold") ? config.getInt("compressionThreshold")
+                : DataChannelCompression.DEFAULT_THRESHOLD);
+      }
+      if (config != null && config.hasKey("bufferedAmountHighThreshold")) {
+        observer.setFlowControl(config.getInt("bufferedAmountHighThreshold"),
+            config.hasKey("bufferedAmountLowThreshold") ? config.getInt("bufferedAmountLowThreshold") : 0);
+      }
 
       ConstraintsMap params = new ConstraintsMap();
       params.putInt("id", dataChannel.id());
@@ -152,122 +244,287 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     if (dataChannel != null) {
       dataChannel.close();
       dataChannels.remove(dataChannelId);
+      dataChannelObservers.remove(dataChannelId);
     } else {
       Log.d(TAG, "dataChannelClose() dataChannel is null");
     }
   }
 
   void dataChannelSend(String dataChannelId, ByteBuffer byteBuffer, Boolean isBinary) {
-    DataChannel dataChannel = dataChannels.get(dataChannelId);
-    if (dataChannel != null) {
+    DataChannelObserver observer = dataChannelObservers.get(dataChannelId);
+    if (observer != null) {
       DataChannel.Buffer buffer = new DataChannel.Buffer(byteBuffer, isBinary);
-      dataChannel.send(buffer);
+      observer.send(buffer);
     } else {
       Log.d(TAG, "dataChannelSend() dataChannel is null");
     }
   }
 
-  RtpTransceiver getRtpTransceiverById(String id) {
-    RtpTransceiver transceiver = transceivers.get(id);
-    if (null == transceiver) {
-      List<RtpTransceiver> transceivers = peerConnection.getTransceivers();
-      for (RtpTransceiver t : transceivers) {
-        if (id.equals(t.getMid())) {
-          transceiver = t;
-        }
+  /**
+   * Sends every message of a batch on one data channel, resolved once for the whole batch.
+   * Each message is a map with a {@code type} of "binary" or "text" and its {@code data};
+   * text may be given as a String or as UTF-8 encoded bytes. The whole batch is rejected,
+   * before anything is sent, when one of the messages is malformed; otherwise answers with the
+   * number of messages the channel accepted.
+   */
+  void dataChannelSendBatch(String dataChannelId, @Nullable List<Map<String, Object>> messages,
+      Result result) {
+    DataChannelObserver observer = dataChannelObservers.get(dataChannelId);
+    if (observer == null) {
+      resultError("dataChannelSendBatch", "dataChannel not found", result);
+      return;
+    }
+    if (messages == null) {
+      resultError("dataChannelSendBatch", "messages is null", result);
+      return;
+    }
+    List<DataChannel.Buffer> buffers = new ArrayList<>(messages.size());
+    for (int i = 0; i < messages.size(); i++) {
+      Map<String, Object> message = messages.get(i);
+      Object type = message != null ? message.get("type") : null;
+      Object data = message != null ? message.get("data") : null;
+      byte[] bytes = null;
+      if (data instanceof byte[]) {
+        bytes = (byte[]) data;
+      } else if (data instanceof String) {
+        bytes = ((String) data).getBytes(StandardCharsets.UTF_8);
+      }
+      if (bytes == null || !("binary".equals(type) || "text".equals(type))) {
+        resultError("dataChannelSendBatch", "malformed message at index " + i, result);
+        return;
+      }
+      buffers.add(new DataChannel.Buffer(ByteBuffer.wrap(bytes), "binary".equals(type)));
+    }
+    int sent = 0;
+    for (DataChannel.Buffer buffer : buffers) {
+      if (observer.send(buffer)) {
+        sent++;
       }
     }
-    return transceiver;
+    result.success(sent);
   }
 
-  RtpSender getRtpSenderById(String id) {
-    List<RtpSender> senders = peerConnection.getSenders();
-    for (RtpSender sender : senders) {
-      if (id.equals(sender.id())) {
-        return sender;
-      }
+  /**
+   * Switches the delivery of received messages between {@code dataChannelReceiveMessage}
+   * events and framed payloads on the {@code FlutterWebRTC/dataChannelMessage} channel.
+   */
+  void dataChannelSetRawMessages(String dataChannelId, boolean enabled, Result result) {
+    DataChannelObserver observer = dataChannelObservers.get(dataChannelId);
+    if (observer != null) {
+      observer.setRawMessages(enabled);
+      result.success(null);
+    } else {
+      resultError("dataChannelSetRawMessages", "dataChannel not found", result);
     }
-    return null;
+  }
+
+  ConstraintsMap getEventQueueStats() {
+    ConstraintsMap params = new ConstraintsMap();
+    synchronized (eventQueue) {
+      params.putInt("pendingEvents", eventQueue.size());
+      params.putLong("droppedEvents", eventQueue.getDroppedCount());
+      params.putLong("coalescedEvents", eventQueue.getCoalescedCount());
+    }
+    return params;
+  }
+
+  void getDataChannelMetrics(String dataChannelId, Result result) {
+    DataChannelObserver observer = dataChannelObservers.get(dataChannelId);
+    if (observer != null) {
+      result.success(observer.getMetrics().toMap());
+    } else {
+      resultError("getDataChannelMetrics", "dataChannel not found", result);
+    }
+  }
+
+  void dataChannelSetMetricsInterval(String dataChannelId, long intervalMs, Result result) {
+    DataChannelObserver observer = dataChannelObservers.get(dataChannelId);
+    if (observer != null) {
+      observer.setMetricsInterval(intervalMs);
+      result.success(null);
+    } else {
+      resultError("dataChannelSetMetricsInterval", "dataChannel not found", result);
+    }
+  }
+
+  void dataChannelSetCompression(String dataChannelId, boolean enabled, int threshold, Result result) {
+    DataChannelObserver observer = dataChannelObservers.get(dataChannelId);
+    if (observer != null) {
+      observer.setCompression(enabled, threshold);
+      result.success(null);
+    } else {
+      resultError("dataChannelSetCompression", "dataChannel not found", result);
+    }
+  }
+
+  void dataChannelSetFlowControl(String dataChannelId, long highWatermark, long lowWatermark, Result result) {
+    DataChannelObserver observer = dataChannelObservers.get(dataChannelId);
+    if (observer != null) {
+      observer.setFlowControl(highWatermark, lowWatermark);
+      result.success(null);
+    } else {
+      resultError("dataChannelSetFlowControl", "dataChannel not found", result);
+    }
+  }
+
+  /**
+   * Streams a file as a chunked transfer, reporting progress on the data channel events.
+   */
+  void dataChannelSendFile(String dataChannelId, String path, int chunkSize, Executor executor, Result result) {
+    DataChannelObserver observer = dataChannelObservers.get(dataChannelId);
+    if (observer == null) {
+      resultError("dataChannelSendFile", "dataChannel not found", result);
+      return;
+    }
+    File file = new File(path);
+    try {
+      InputStream input = new FileInputStream(file);
+      result.success(observer.sendStream(input, file.length(), chunkSize, executor));
+    } catch (FileNotFoundException e) {
+      resultError("dataChannelSendFile", "file not found: " + path, result);
+    }
+  }
+
+  /**
+   * Reassembles incoming chunked transfers into files in {@code directory}, or into memory up
+   * to {@code maxBufferSize} bytes when {@code directory} is null. Stops when both are null.
+   */
+  void dataChannelReceiveTransfers(String dataChannelId, @Nullable String directory,
+      @Nullable Integer maxBufferSize, Executor executor, Result result) {
+    DataChannelObserver observer = dataChannelObservers.get(dataChannelId);
+    if (observer == null) {
+      resultError("dataChannelReceiveTransfers", "dataChannel not found", result);
+      return;
+    }
+    if (directory == null && maxBufferSize == null) {
+      observer.setTransferReceiver(null);
+    } else {
+      observer.setTransferReceiver(new ChunkedTransfer.Receiver(observer,
+          directory != null ? new File(directory) : null,
+          maxBufferSize != null ? maxBufferSize : 0,
+          new SerialExecutor(executor)));
+    }
+    result.success(null);
+  }
+
+  void dataChannelCancelTransfer(String dataChannelId, int transferId, Result result) {
+    DataChannelObserver observer = dataChannelObservers.get(dataChannelId);
+    if (observer != null && observer.cancelTransfer(transferId)) {
+      result.success(null);
+    } else {
+      resultError("dataChannelCancelTransfer", "transfer not found", result);
+    }
+  }
+
+  RtpTransceiver getRtpTransceiverById(String id) {
+    return rtpRegistry.getTransceiver(id);
+  }
+
+  RtpSender getRtpSenderById(String id) {
+    return rtpRegistry.getSender(id);
   }
 
   RtpReceiver getRtpReceiverById(String id) {
-    List<RtpReceiver> receivers = peerConnection.getReceivers();
-    for (RtpReceiver receiver : receivers) {
-      if (id.equals(receiver.id())) {
-        return receiver;
+    return rtpRegistry.getReceiver(id);
+  }
+
+  List<RtpSender> getRtpSenders() {
+    return rtpRegistry.getSenders();
+  }
+
+  void handleStatsReport(RTCStatsReport rtcStatsReport, StatsFilter filter, Result result) {
+    result.success(statsReportToMap(rtcStatsReport, filter));
+  }
+
+  static Map<String, Object> statsReportToMap(RTCStatsReport rtcStatsReport, StatsFilter filter) {
+    Map<String, RTCStats> reports = rtcStatsReport.getStatsMap();
+    ConstraintsMap params = new ConstraintsMap();
+    ConstraintsArray stats = new ConstraintsArray();
+
+    for (RTCStats report : reports.values()) {
+      if (!filter.acceptsType(report.getType())) {
+        continue;
       }
+      ConstraintsMap report_map = new ConstraintsMap();
+
+      report_map.putString("id", report.getId());
+      report_map.putString("type", report.getType());
+      report_map.putDouble("timestamp", report.getTimestampUs());
+      report_map.putMap("values", statsValues(report, filter.membersOf(report.getType())));
+      stats.pushMap(report_map);
     }
-    return null;
+
+    params.putArray("stats", stats.toArrayList());
+    return params.toMap();
   }
 
-  void handleStatsReport(RTCStatsReport rtcStatsReport, Result result) {
-      Map<String, RTCStats>    reports = rtcStatsReport.getStatsMap();
-      ConstraintsMap params = new ConstraintsMap();
-      ConstraintsArray stats = new ConstraintsArray();
-
-      for (RTCStats report : reports.values()) {
-          ConstraintsMap report_map = new ConstraintsMap();
-
-          report_map.putString("id", report.getId());
-          report_map.putString("type", report.getType());
-          report_map.putDouble("timestamp", report.getTimestampUs());
-
-          Map<String, Object> values = report.getMembers();
-          ConstraintsMap v_map = new ConstraintsMap();
-          for (String key : values.keySet()) {
-              Object v = values.get(key);
-              if(v instanceof String) {
-                  v_map.putString(key, (String)v);
-              } else if(v instanceof String[]) {
-                  ConstraintsArray arr = new ConstraintsArray();
-                  for(String s : (String[])v) {
-                      arr.pushString(s);
-                  }
-                  v_map.putArray(key, arr.toArrayList());
-              } else if(v instanceof Integer) {
-                  v_map.putInt(key, (Integer)v);
-              } else if(v instanceof Long) {
-                  v_map.putLong(key, (Long)v);
-              } else if(v instanceof Double) {
-                  v_map.putDouble(key, (Double)v);
-              } else if(v instanceof Boolean) {
-                  v_map.putBoolean(key, (Boolean)v);
-              } else if(v instanceof BigInteger){
-                  v_map.putLong(key, ((BigInteger)v).longValue());
-              }  else if(v instanceof LinkedHashMap) {
-                    ConstraintsMap m = new ConstraintsMap();
-                    for(Map.Entry<String, Object> entry : ((LinkedHashMap<String, Object>)v).entrySet()) {
-                        Object value = entry.getValue();
-                        if(value instanceof String) {
-                            m.putString(entry.getKey(), (String)value);
-                        } else if(value instanceof Integer) {
-                            m.putInt(entry.getKey(), (Integer)value);
-                        } else if(value instanceof Long) {
-                            m.putLong(entry.getKey(), (Long)value);
-                        } else if(value instanceof Double) {
-                            m.putDouble(entry.getKey(), (Double)value);
-                        } else if(value instanceof Boolean) {
-                            m.putBoolean(entry.getKey(), (Boolean)value);
-                        } else if(value instanceof BigInteger) {
-                            m.putLong(entry.getKey(), ((BigInteger)value).longValue());
-                        } else {
-                            Log.d(TAG, "getStats() unknown type: " + value.getClass().getName() + " for [" + entry.getKey() + "] value: " + value);
-                        }
-                    }
-                    v_map.putMap(key, m.toMap());
-              } else {
-                  Log.d(TAG, "getStats() unknown type: " + v.getClass().getName() + " for [" + key + "] value: " + v);
+  /**
+   * Converts the members of a stats report to codec friendly values.
+   *
+   * @param members the members to convert, or {@code null} for all of them.
+   */
+  static Map<String, Object> statsValues(RTCStats report, @Nullable Set<String> members) {
+      Map<String, Object> values = report.getMembers();
+      ConstraintsMap v_map = new ConstraintsMap(
+          new HashMap<>(mapCapacity(members != null ? members.size() : values.size())));
+      for (String key : members != null ? members : values.keySet()) {
+          Object v = values.get(key);
+          if (v == null) {
+              continue;
+          }
+          if(v instanceof String) {
+              v_map.putString(key, (String)v);
+          } else if(v instanceof String[]) {
+              ConstraintsArray arr = new ConstraintsArray();
+              for(String s : (String[])v) {
+                  arr.pushString(s);
               }
+              v_map.putArray(key, arr.toArrayList());
+          } else if(v instanceof Integer) {
+              v_map.putInt(key, (Integer)v);
+          } else if(v instanceof Long) {
+              v_map.putLong(key, (Long)v);
+          } else if(v instanceof Double) {
+              v_map.putDouble(key, (Double)v);
+          } else if(v instanceof Boolean) {
+              v_map.putBoolean(key, (Boolean)v);
+          } else if(v instanceof BigInteger){
+              v_map.putLong(key, ((BigInteger)v).longValue());
+          }  else if(v instanceof LinkedHashMap) {
+                LinkedHashMap<String, Object> nested = (LinkedHashMap<String, Object>)v;
+                ConstraintsMap m = new ConstraintsMap(new HashMap<>(mapCapacity(nested.size())));
+                for(Map.Entry<String, Object> entry : nested.entrySet()) {
+                    Object value = entry.getValue();
+                    if(value instanceof String) {
+                        m.putString(entry.getKey(), (String)value);
+                    } else if(value instanceof Integer) {
+                        m.putInt(entry.getKey(), (Integer)value);
+                    } else if(value instanceof Long) {
+                        m.putLong(entry.getKey(), (Long)value);
+                    } else if(value instanceof Double) {
+                        m.putDouble(entry.getKey(), (Double)value);
+                    } else if(value instanceof Boolean) {
+                        m.putBoolean(entry.getKey(), (Boolean)value);
+                    } else if(value instanceof BigInteger) {
+                        m.putLong(entry.getKey(), ((BigInteger)value).longValue());
+                    }
+                }
+                v_map.putMap(key, m.toMap());
           }
-      report_map.putMap("values", v_map.toMap());
-      stats.pushMap(report_map);
-    }
+          // Members of other types are skipped; logging them here would run for every
+          // member of every report.
+      }
+      return v_map.toMap();
+  }
 
-    params.putArray("stats", stats.toArrayList());
-    result.success(params.toMap());
+  /**
+   * The initial capacity of a {@link HashMap} holding {@code size} entries without rehashing.
+   */
+  private static int mapCapacity(int size) {
+      return (int) (size / 0.75f) + 1;
   }
 
-  void getStatsForTrack(String trackId, Result result) {
+  void getStatsForTrack(String trackId, StatsFilter filter, Result result) {
     if (trackId == null || trackId.isEmpty()) {
       resultError("peerConnectionGetStats", "MediaStreamTrack not found for id: " + trackId, result);
       return;
@@ -275,41 +532,139 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
 
     RtpSender sender = null;
     RtpReceiver receiver = null;
-    for (RtpSender s : peerConnection.getSenders()) {
+    for (RtpSender s : rtpRegistry.getSenders()) {
       if (s.track() != null && trackId.equals(s.track().id())) {
         sender = s;
         break;
       }
     }
-    for (RtpReceiver r : peerConnection.getReceivers()) {
+    for (RtpReceiver r : rtpRegistry.getReceivers()) {
       if (r.track() != null && trackId.equals(r.track().id())) {
         receiver = r;
         break;
       }
     }
     if (sender != null) {
-      peerConnection.getStats(sender, rtcStatsReport -> handleStatsReport(rtcStatsReport, result));
+      peerConnection.getStats(sender, rtcStatsReport -> handleStatsReport(rtcStatsReport, filter, result));
     } else if (receiver != null) {
-      peerConnection.getStats(receiver, rtcStatsReport -> handleStatsReport(rtcStatsReport, result));
+      peerConnection.getStats(receiver, rtcStatsReport -> handleStatsReport(rtcStatsReport, filter, result));
     } else {
       resultError("peerConnectionGetStats", "MediaStreamTrack not found for id: " + trackId, result);
     }
   }
 
-  void getStats(final Result result) {
+  /**
+   * Sends the changes of the stats as {@code onStatsDelta} events every {@code intervalMs},
+   * replacing any previous subscription.
+   */
+  synchronized void subscribeStats(long intervalMs, StatsFilter filter, ScheduledExecutorService scheduler) {
+    unsubscribeStats();
+    statsSubscription = new StatsSubscription(this, intervalMs, filter, scheduler);
+  }
+
+  synchronized void unsubscribeStats() {
+    if (statsSubscription != null) {
+      statsSubscription.cancel();
+      statsSubscription = null;
+    }
+  }
+
+  /**
+   * Sends {@code onCallQuality} events computed over the last {@code windowSize} samples,
+   * replacing any previous monitor.
+   */
+  synchronized void startCallQualityMonitor(long sampleIntervalMs, int windowSize, long reportIntervalMs,
+      ScheduledExecutorService scheduler) {
+    stopCallQualityMonitor();
+    callQualityMonitor = new CallQualityMonitor(this, sampleIntervalMs, windowSize, reportIntervalMs, scheduler);
+  }
+
+  synchronized void stopCallQualityMonitor() {
+    if (callQualityMonitor != null) {
+      callQualityMonitor.cancel();
+      callQualityMonitor = null;
+    }
+  }
+
+  /**
+   * Starts recording the given stats members, replacing any previous recording.
+   */
+  synchronized void startStatsRecorder(Map<String, List<String>> members, long sampleIntervalMs, long windowMs,
+      long memoryBudget, int maxSeries, ScheduledExecutorService scheduler) {
+    stopStatsRecorder();
+    statsRecorder = new StatsRecorder(this, members, sampleIntervalMs, windowMs, memoryBudget, maxSeries, scheduler);
+  }
+
+  synchronized void stopStatsRecorder() {
+    if (statsRecorder != null) {
+      statsRecorder.cancel();
+    }
+  }
+
+  /**
+   * Writes the recorded stats history to {@code path}, as "csv" or "binary".
+   */
+  synchronized void exportStatsHistory(String path, String format, ScheduledExecutorService scheduler,
+      Result result) {
+    StatsRecorder recorder = statsRecorder;
+    if (recorder == null) {
+      resultError("exportStatsHistory", "no stats recorded", result);
+      return;
+    }
+    // The recorder is only accessed on the scheduler thread.
+    scheduler.execute(() -> {
+      try {
+        if ("binary".equals(format)) {
+          recorder.exportBinary(path);
+        } else {
+          recorder.exportCsv(path);
+        }
+        result.success(path);
+      } catch (IOException e) {
+        resultError("exportStatsHistory", e.getMessage(), result);
+      }
+    });
+  }
+
+  void getStats(StatsFilter filter, final Result result) {
     peerConnection.getStats(
-        rtcStatsReport -> handleStatsReport(rtcStatsReport, result));
+        rtcStatsReport -> handleStatsReport(rtcStatsReport, filter, result));
   }
 
   @Override
   public void onIceCandidate(final IceCandidate candidate) {
     Log.d(TAG, "onIceCandidate");
+    if (candidateBatchingInterval > 0) {
+      synchronized (pendingCandidates) {
+        pendingCandidates.add(candidateToMap(candidate));
+        if (pendingCandidates.size() == 1) {
+          handler.postDelayed(flushCandidatesRunnable, candidateBatchingInterval);
+        }
+      }
+      return;
+    }
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "onCandidate");
     params.putMap("candidate", candidateToMap(candidate));
     sendEvent(params);
   }
 
+  private void flushCandidates() {
+    ArrayList<Object> candidates;
+    synchronized (pendingCandidates) {
+      handler.removeCallbacks(flushCandidatesRunnable);
+      if (pendingCandidates.isEmpty()) {
+        return;
+      }
+      candidates = new ArrayList<>(pendingCandidates);
+      pendingCandidates.clear();
+    }
+    ConstraintsMap params = new ConstraintsMap();
+    params.putString("event", "onCandidates");
+    params.putArray("candidates", candidates);
+    sendEvent(params);
+  }
+
   @Override
   public void onSelectedCandidatePairChanged(CandidatePairChangeEvent event) {
     Log.d(TAG, "onSelectedCandidatePairChanged");
@@ -321,7 +676,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     candidateParams.putMap("remote", candidateToMap(event.remote));
     candidateParams.putString("reason", event.reason);
     params.putMap("candidate", candidateParams.toMap());
-    sendEvent(params);
+    sendEvent(params, "onSelectedCandidatePairChanged");
   }
 
   @Override
@@ -334,7 +689,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "iceConnectionState");
     params.putString("state", iceConnectionStateString(iceConnectionState));
-    sendEvent(params);
+    sendEvent(params, "iceConnectionState");
   }
 
   @Override
@@ -349,10 +704,13 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
   @Override
   public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
     Log.d(TAG, "onIceGatheringChange" + iceGatheringState.name());
+    if (iceGatheringState == PeerConnection.IceGatheringState.COMPLETE) {
+      flushCandidates();
+    }
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "iceGatheringState");
     params.putString("state", iceGatheringStateString(iceGatheringState));
-    sendEvent(params);
+    sendEvent(params, "iceGatheringState");
   }
 
   private String getUIDForStream(MediaStream mediaStream) {
@@ -387,6 +745,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     if (streamUID == null) {
       streamUID = stateProvider.getNextStreamUUID();
       remoteStreams.put(streamId, mediaStream);
+      stateProvider.getRemoteMediaIndex().putStream(id, streamId, mediaStream);
     }
 
     ConstraintsMap params = new ConstraintsMap();
@@ -401,7 +760,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
       VideoTrack track = mediaStream.videoTracks.get(i);
       String trackId = track.id();
 
-      remoteTracks.put(trackId, track);
+      putRemoteTrack(track);
 
       ConstraintsMap trackInfo = new ConstraintsMap();
       trackInfo.putString("id", trackId);
@@ -416,7 +775,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
       AudioTrack track = mediaStream.audioTracks.get(i);
       String trackId = track.id();
 
-      remoteTracks.put(trackId, track);
+      putRemoteTrack(track);
 
       ConstraintsMap trackInfo = new ConstraintsMap();
       trackInfo.putString("id", trackId);
@@ -433,10 +792,34 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     sendEvent(params);
   }
 
+  private void putRemoteTrack(MediaStreamTrack track) {
+    remoteTracks.put(track.id(), track);
+    stateProvider.getRemoteMediaIndex().putTrack(id, track);
+  }
+
+  private void removeRemoteTrack(String trackId) {
+    remoteTracks.remove(trackId);
+    stateProvider.getRemoteMediaIndex().removeTrack(id, trackId);
+  }
+
   void sendEvent(ConstraintsMap event) {
-    if (eventSink != null) {
-      eventSink.success(event.toMap());
+    sendEvent(event, null);
+  }
+
+  /**
+   * @param coalesceKey events with the same key replace each other while waiting for the
+   *                    listener, when the queue coalesces.
+   */
+  void sendEvent(ConstraintsMap event, @Nullable String coalesceKey) {
+    EventChannel.EventSink sink;
+    synchronized (eventQueue) {
+      sink = eventSink;
+      if (sink == null) {
+        eventQueue.add(event.toMap(), coalesceKey);
+        return;
+      }
     }
+    sink.success(event.toMap());
   }
 
   @Override
@@ -445,11 +828,13 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     String streamId = mediaStream.getId();
 
     for (VideoTrack track : mediaStream.videoTracks) {
-      this.remoteTracks.remove(track.id());
+      removeRemoteTrack(track.id());
     }
     for (AudioTrack track : mediaStream.audioTracks) {
-      this.remoteTracks.remove(track.id());
+      removeRemoteTrack(track.id());
     }
+    remoteStreams.remove(streamId);
+    stateProvider.getRemoteMediaIndex().removeStream(id, streamId);
 
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "onRemoveStream");
@@ -459,11 +844,16 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
 
   @Override
   public void onTrack(RtpTransceiver transceiver) {
+    rtpRegistry.putTransceiver(transceiver);
   }
 
   @Override
   public void onAddTrack(RtpReceiver receiver, MediaStream[] mediaStreams) {
     Log.d(TAG, "onAddTrack");
+    rtpRegistry.putReceiver(receiver);
+    if (receiver.track() != null) {
+      putRemoteTrack(receiver.track());
+    }
     // for plan-b
     for (MediaStream stream : mediaStreams) {
       String streamId = stream.getId();
@@ -504,15 +894,10 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     params.putMap("receiver", rtpReceiverToMap(receiver));
 
     if (this.configuration.sdpSemantics == PeerConnection.SdpSemantics.UNIFIED_PLAN) {
-      List<RtpTransceiver> transceivers = peerConnection.getTransceivers();
-      for (RtpTransceiver transceiver : transceivers) {
-        if (transceiver.getReceiver() != null && receiver.id().equals(transceiver.getReceiver().id())) {
-          String transceiverId = transceiver.getMid();
-          if (null == transceiverId) {
-            transceiverId = stateProvider.getNextStreamUUID();
-          }
-          params.putMap("transceiver", transceiverToMap(transceiverId, transceiver));
-        }
+      RtpTransceiver transceiver = rtpRegistry.getTransceiverForReceiver(receiver.id());
+      if (transceiver != null) {
+        params.putMap("transceiver",
+            transceiverToMap(rtpRegistry.getTransceiverId(transceiver), transceiver));
       }
     }
     sendEvent(params);
@@ -524,6 +909,8 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
 
     MediaStreamTrack track = rtpReceiver.track();
     String trackId = track.id();
+    removeRemoteTrack(trackId);
+    rtpRegistry.markDirty();
     ConstraintsMap trackInfo = new ConstraintsMap();
     trackInfo.putString("id", trackId);
     trackInfo.putString("label", track.kind());
@@ -553,27 +940,31 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     sendEvent(params);
   }
 
-  private void registerDataChannelObserver(String dcId, DataChannel dataChannel) {
+  private DataChannelObserver registerDataChannelObserver(String dcId, DataChannel dataChannel) {
     // DataChannel.registerObserver implementation does not allow to
     // unregister, so the observer is registered here and is never
     // unregistered
-    dataChannel.registerObserver(
-        new DataChannelObserver(messenger, id, dcId, dataChannel));
+    DataChannelObserver observer = new DataChannelObserver(messenger, id, dcId, dataChannel);
+    dataChannelObservers.put(dcId, observer);
+    dataChannel.registerObserver(observer);
+    return observer;
   }
 
   @Override
   public void onRenegotiationNeeded() {
+    rtpRegistry.markDirty();
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "onRenegotiationNeeded");
-    sendEvent(params);
+    sendEvent(params, "onRenegotiationNeeded");
   }
 
   @Override
   public void onSignalingChange(PeerConnection.SignalingState signalingState) {
+    rtpRegistry.markDirty();
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "signalingState");
     params.putString("state", signalingStateString(signalingState));
-    sendEvent(params);
+    sendEvent(params, "signalingState");
   }
 
   @Override
@@ -582,7 +973,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     ConstraintsMap params = new ConstraintsMap();
     params.putString("event", "peerConnectionState");
     params.putString("state", connectionStateString(connectionState));
-    sendEvent(params);
+    sendEvent(params, "peerConnectionState");
   }
 
   @Nullable
@@ -981,6 +1372,8 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
 
   public void addTrack(MediaStreamTrack track, List<String> streamIds, Result result) {
     RtpSender sender = peerConnection.addTrack(track, streamIds);
+    rtpRegistry.putSender(sender);
+    rtpRegistry.markDirty();
     result.success(rtpSenderToMap(sender));
   }
 
@@ -991,6 +1384,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
       return;
     }
     boolean res = peerConnection.removeTrack(sender);
+    rtpRegistry.markDirty();
     Map<String, Object> params = new HashMap<>();
     params.put("result", res);
     result.success(params);
@@ -1003,11 +1397,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     } else {
       transceiver = peerConnection.addTransceiver(track);
     }
-    String transceiverId = transceiver.getMid();
-    if (null == transceiverId) {
-      transceiverId = stateProvider.getNextStreamUUID();
-    }
-    transceivers.put(transceiverId, transceiver);
+    String transceiverId = rtpRegistry.putTransceiver(transceiver);
     result.success(transceiverToMap(transceiverId, transceiver));
   }
 
@@ -1018,11 +1408,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
     } else {
       transceiver = peerConnection.addTransceiver(stringToMediaType(mediaType));
     }
-    String transceiverId = transceiver.getMid();
-    if (null == transceiverId) {
-      transceiverId = stateProvider.getNextStreamUUID();
-    }
-    transceivers.put(transceiverId, transceiver);
+    String transceiverId = rtpRegistry.putTransceiver(transceiver);
     result.success(transceiverToMap(transceiverId, transceiver));
   }
 
@@ -1145,7 +1531,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
   }
 
   public void getSenders(Result result) {
-    List<RtpSender> senders = peerConnection.getSenders();
+    List<RtpSender> senders = rtpRegistry.getSenders();
     ConstraintsArray sendersParams = new ConstraintsArray();
     for (RtpSender sender : senders) {
       sendersParams.pushMap(new ConstraintsMap(rtpSenderToMap(sender)));
@@ -1156,7 +1542,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
   }
 
   public void getReceivers(Result result) {
-    List<RtpReceiver> receivers = peerConnection.getReceivers();
+    List<RtpReceiver> receivers = rtpRegistry.getReceivers();
     ConstraintsArray receiversParams = new ConstraintsArray();
     for (RtpReceiver receiver : receivers) {
       receiversParams.pushMap(new ConstraintsMap(rtpReceiverToMap(receiver)));
@@ -1167,13 +1553,10 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
   }
 
   public void getTransceivers(Result result) {
-    List<RtpTransceiver> transceivers = peerConnection.getTransceivers();
+    List<RtpTransceiver> transceivers = rtpRegistry.getTransceivers();
     ConstraintsArray transceiversParams = new ConstraintsArray();
     for (RtpTransceiver transceiver : transceivers) {
-      String transceiverId = transceiver.getMid();
-      if (null == transceiverId) {
-        transceiverId = stateProvider.getNextStreamUUID();
-      }
+      String transceiverId = rtpRegistry.getTransceiverId(transceiver);
       transceiversParams.pushMap(new ConstraintsMap(transceiverToMap(transceiverId, transceiver)));
     }
     ConstraintsMap params = new ConstraintsMap();
@@ -1186,7 +1569,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
       return null;
     }
     MediaStreamTrack track = null;
-    List<RtpTransceiver> transceivers = peerConnection.getTransceivers();
+    List<RtpTransceiver> transceivers = rtpRegistry.getTransceivers();
     for (RtpTransceiver transceiver : transceivers) {
       RtpReceiver receiver = transceiver.getReceiver();
       if (receiver != null) {
@@ -1200,13 +1583,7 @@ class PeerConnectionObserver implements PeerConnection.Observer, EventChannel.St
   }
 
   public String getNextDataChannelUUID() {
-    String uuid;
-
-    do {
-      uuid = UUID.randomUUID().toString();
-    } while (dataChannels.get(uuid) != null);
-
-    return uuid;
+    return stateProvider.getNextStreamUUID();
   }
 
 }
@@ -0,0 +1,80 @@
+package com.cloudwebrtc.webrtc;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.MediaStream;
+import org.webrtc.MediaStreamTrack;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global index of the remote tracks and streams of every peer connection, so that a track
+ * or stream can be found by id without visiting each {@link PeerConnectionObserver}.
+ */
+class RemoteMediaIndex {
+
+  static final class Entry<T> {
+    final String peerConnectionId;
+    final T value;
+
+    Entry(String peerConnectionId, T value) {
+      this.peerConnectionId = peerConnectionId;
+      this.value = value;
+    }
+  }
+
+  private final Map<String, Entry<MediaStreamTrack>> tracks = new ConcurrentHashMap<>();
+  private final Map<String, Entry<MediaStream>> streams = new ConcurrentHashMap<>();
+
+  void putTrack(String peerConnectionId, MediaStreamTrack track) {
+    tracks.put(track.id(), new Entry<>(peerConnectionId, track));
+  }
+
+  void removeTrack(String peerConnectionId, String trackId) {
+    Entry<MediaStreamTrack> entry = tracks.get(trackId);
+    if (entry != null && entry.peerConnectionId.equals(peerConnectionId)) {
+      tracks.remove(trackId, entry);
+    }
+  }
+
+  @Nullable
+  MediaStreamTrack getTrack(String trackId) {
+    Entry<MediaStreamTrack> entry = tracks.get(trackId);
+    return entry == null ? null : entry.value;
+  }
+
+  void putStream(String peerConnectionId, String streamId, MediaStream stream) {
+    streams.put(streamId, new Entry<>(peerConnectionId, stream));
+  }
+
+  void removeStream(String peerConnectionId, String streamId) {
+    Entry<MediaStream> entry = streams.get(streamId);
+    if (entry != null && entry.peerConnectionId.equals(peerConnectionId)) {
+      streams.remove(streamId, entry);
+    }
+  }
+
+  @Nullable
+  MediaStream getStream(String streamId) {
+    Entry<MediaStream> entry = streams.get(streamId);
+    return entry == null ? null : entry.value;
+  }
+
+  /**
+   * Drops every track and stream owned by the given peer connection.
+   */
+  void removePeerConnection(String peerConnectionId) {
+    removeAll(tracks, peerConnectionId);
+    removeAll(streams, peerConnectionId);
+  }
+
+  private static <T> void removeAll(Map<String, Entry<T>> map, String peerConnectionId) {
+    for (Iterator<Entry<T>> i = map.values().iterator(); i.hasNext(); ) {
+      if (i.next().peerConnectionId.equals(peerConnectionId)) {
+        i.remove();
+      }
+    }
+  }
+}
@@ -0,0 +1,291 @@
+package com.cloudwebrtc.webrtc;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RtpReceiver;
+import org.webrtc.RtpSender;
+import org.webrtc.RtpTransceiver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Id-indexed cache of the senders, receivers and transceivers of one peer connection.
+ *
+ * Every {@code PeerConnection.getSenders()}, {@code getReceivers()} and {@code getTransceivers()}
+ * call crosses JNI, allocates new wrappers and disposes the ones returned by the previous call,
+ * so the registry is the only place that calls them. It is kept up to date from addTrack,
+ * addTransceiver and the track callbacks, and only resyncs from native once it has been
+ * marked dirty by a renegotiation.
+ */
+class RtpRegistry {
+  private final StateProvider stateProvider;
+  private final boolean unifiedPlan;
+  private PeerConnection peerConnection;
+
+  private final Map<String, RtpSender> senders = new LinkedHashMap<>();
+  private final Map<String, RtpReceiver> receivers = new LinkedHashMap<>();
+  /** Transceivers in creation order, keyed by sender id. */
+  private final Map<String, RtpTransceiver> transceivers = new LinkedHashMap<>();
+  /** Transceivers by their flutter id and by mid. */
+  private final Map<String, RtpTransceiver> transceiversById = new HashMap<>();
+  /** Transceivers by receiver id, used to resolve onAddTrack. */
+  private final Map<String, RtpTransceiver> transceiversByReceiverId = new HashMap<>();
+  /**
+   * Ids generated for transceivers without a mid, keyed by sender id so that they
+   * survive resyncs (sender ids are stable for the lifetime of the transceiver).
+   */
+  private final Map<String, String> generatedTransceiverIds = new HashMap<>();
+  private boolean dirty = true;
+  /** Bumped whenever the registry is invalidated, to detect it during a resync. */
+  private long generation = 0;
+
+  RtpRegistry(StateProvider stateProvider, boolean unifiedPlan) {
+    this.stateProvider = stateProvider;
+    this.unifiedPlan = unifiedPlan;
+  }
+
+  synchronized void setPeerConnection(PeerConnection peerConnection) {
+    this.peerConnection = peerConnection;
+  }
+
+  /**
+   * Invalidates the registry after a renegotiation; the next miss or full listing
+   * resyncs from native.
+   */
+  synchronized void markDirty() {
+    dirty = true;
+    generation++;
+  }
+
+  synchronized void clear() {
+    senders.clear();
+    receivers.clear();
+    transceivers.clear();
+    transceiversById.clear();
+    transceiversByReceiverId.clear();
+    generatedTransceiverIds.clear();
+    dirty = true;
+    generation++;
+  }
+
+  void putSender(RtpSender sender) {
+    String senderId = sender.id();
+    synchronized (this) {
+      senders.put(senderId, sender);
+    }
+  }
+
+  void putReceiver(RtpReceiver receiver) {
+    String receiverId = receiver.id();
+    synchronized (this) {
+      receivers.put(receiverId, receiver);
+    }
+  }
+
+  /**
+   * Registers a transceiver together with its sender and receiver.
+   *
+   * @return the id reported to flutter for this transceiver.
+   */
+  String putTransceiver(RtpTransceiver transceiver) {
+    TransceiverIds ids = new TransceiverIds(transceiver);
+    synchronized (this) {
+      return putTransceiver(transceiver, ids);
+    }
+  }
+
+  private String putTransceiver(RtpTransceiver transceiver, TransceiverIds ids) {
+    transceivers.put(ids.senderId, transceiver);
+    String transceiverId = ids.mid != null ? ids.mid : generatedTransceiverId(ids.senderId);
+    transceiversById.put(transceiverId, transceiver);
+    String generatedId = generatedTransceiverIds.get(ids.senderId);
+    if (generatedId != null) {
+      transceiversById.put(generatedId, transceiver);
+    }
+    senders.put(ids.senderId, transceiver.getSender());
+    if (ids.receiverId != null) {
+      receivers.put(ids.receiverId, transceiver.getReceiver());
+      transceiversByReceiverId.put(ids.receiverId, transceiver);
+    }
+    return transceiverId;
+  }
+
+  String getTransceiverId(RtpTransceiver transceiver) {
+    String mid = transceiver.getMid();
+    if (mid != null) {
+      return mid;
+    }
+    String senderId = transceiver.getSender().id();
+    synchronized (this) {
+      return generatedTransceiverId(senderId);
+    }
+  }
+
+  private String generatedTransceiverId(String senderId) {
+    String transceiverId = generatedTransceiverIds.get(senderId);
+    if (transceiverId == null) {
+      transceiverId = stateProvider.getNextStreamUUID();
+      generatedTransceiverIds.put(senderId, transceiverId);
+    }
+    return transceiverId;
+  }
+
+  @Nullable
+  RtpSender getSender(String id) {
+    synchronized (this) {
+      RtpSender sender = senders.get(id);
+      if (sender != null) {
+        return sender;
+      }
+    }
+    if (resyncIfDirty()) {
+      synchronized (this) {
+        return senders.get(id);
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  RtpReceiver getReceiver(String id) {
+    synchronized (this) {
+      RtpReceiver receiver = receivers.get(id);
+      if (receiver != null) {
+        return receiver;
+      }
+    }
+    if (resyncIfDirty()) {
+      synchronized (this) {
+        return receivers.get(id);
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  RtpTransceiver getTransceiver(String id) {
+    synchronized (this) {
+      RtpTransceiver transceiver = transceiversById.get(id);
+      if (transceiver != null) {
+        return transceiver;
+      }
+    }
+    if (resyncIfDirty()) {
+      synchronized (this) {
+        return transceiversById.get(id);
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  RtpTransceiver getTransceiverForReceiver(String receiverId) {
+    synchronized (this) {
+      RtpTransceiver transceiver = transceiversByReceiverId.get(receiverId);
+      if (transceiver != null) {
+        return transceiver;
+      }
+    }
+    if (resyncIfDirty()) {
+      synchronized (this) {
+        return transceiversByReceiverId.get(receiverId);
+      }
+    }
+    return null;
+  }
+
+  List<RtpSender> getSenders() {
+    resyncIfDirty();
+    synchronized (this) {
+      return new ArrayList<>(senders.values());
+    }
+  }
+
+  List<RtpReceiver> getReceivers() {
+    resyncIfDirty();
+    synchronized (this) {
+      return new ArrayList<>(receivers.values());
+    }
+  }
+
+  List<RtpTransceiver> getTransceivers() {
+    resyncIfDirty();
+    synchronized (this) {
+      return new ArrayList<>(transceivers.values());
+    }
+  }
+
+  /**
+   * Ids of a transceiver, read from native before taking the registry monitor.
+   */
+  private static class TransceiverIds {
+    final String senderId;
+    @Nullable
+    final String mid;
+    @Nullable
+    final String receiverId;
+
+    TransceiverIds(RtpTransceiver transceiver) {
+      senderId = transceiver.getSender().id();
+      mid = transceiver.getMid();
+      RtpReceiver receiver = transceiver.getReceiver();
+      receiverId = receiver != null ? receiver.id() : null;
+    }
+  }
+
+  /**
+   * Lists the senders, receivers and transceivers from native without holding the monitor,
+   * since these calls block on the signaling thread whose callbacks need it, then swaps them
+   * in. The registry stays dirty if it was invalidated meanwhile.
+   */
+  private boolean resyncIfDirty() {
+    PeerConnection peerConnection;
+    long snapshotGeneration;
+    synchronized (this) {
+      if (!dirty || this.peerConnection == null) {
+        return false;
+      }
+      peerConnection = this.peerConnection;
+      snapshotGeneration = generation;
+    }
+    List<RtpTransceiver> transceiverList = new ArrayList<>();
+    List<TransceiverIds> transceiverIds = new ArrayList<>();
+    Map<String, RtpSender> senderMap = new LinkedHashMap<>();
+    Map<String, RtpReceiver> receiverMap = new LinkedHashMap<>();
+    if (unifiedPlan) {
+      for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
+        transceiverList.add(transceiver);
+        transceiverIds.add(new TransceiverIds(transceiver));
+      }
+    } else {
+      // getTransceivers() is only supported with unified plan.
+      for (RtpSender sender : peerConnection.getSenders()) {
+        senderMap.put(sender.id(), sender);
+      }
+      for (RtpReceiver receiver : peerConnection.getReceivers()) {
+        receiverMap.put(receiver.id(), receiver);
+      }
+    }
+    synchronized (this) {
+      senders.clear();
+      receivers.clear();
+      transceivers.clear();
+      transceiversById.clear();
+      transceiversByReceiverId.clear();
+      senders.putAll(senderMap);
+      receivers.putAll(receiverMap);
+      for (int i = 0; i < transceiverList.size(); i++) {
+        putTransceiver(transceiverList.get(i), transceiverIds.get(i));
+      }
+      if (generation == snapshotGeneration) {
+        dirty = false;
+      }
+    }
+    return true;
+  }
+}
@@ -28,6 +28,8 @@ public interface StateProvider {
 
   String getNextTrackUUID();
 
+  RemoteMediaIndex getRemoteMediaIndex();
+
   PeerConnectionFactory getPeerConnectionFactory();
 
   PeerConnectionObserver getPeerConnectionObserver(String peerConnectionId);
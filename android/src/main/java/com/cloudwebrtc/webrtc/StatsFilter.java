@@ -0,0 +1,67 @@
+package com.cloudwebrtc.webrtc;
+
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Selects the stats reports to convert, by their type ({@code inbound-rtp},
+ * {@code candidate-pair}, ...), and optionally the members to convert for each type. Built
+ * from a map such as
+ * {@code {"types": ["inbound-rtp", "candidate-pair"], "members": {"inbound-rtp": ["bytesReceived"]}}};
+ * a missing type list accepts every type, a type without member list keeps every member.
+ */
+class StatsFilter {
+  static final StatsFilter ALL = new StatsFilter(null);
+
+  @Nullable
+  private final Set<String> types;
+  private final Map<String, Set<String>> members;
+
+  StatsFilter(@Nullable Set<String> types) {
+    this(types, Collections.emptyMap());
+  }
+
+  StatsFilter(@Nullable Set<String> types, Map<String, Set<String>> members) {
+    this.types = types;
+    this.members = members;
+  }
+
+  @SuppressWarnings("unchecked")
+  static StatsFilter fromMap(@Nullable Map<String, Object> filter) {
+    if (filter == null) {
+      return ALL;
+    }
+    Object types = filter.get("types");
+    Map<String, Set<String>> members = new HashMap<>();
+    Object membersByType = filter.get("members");
+    if (membersByType instanceof Map) {
+      for (Map.Entry<String, Object> entry : ((Map<String, Object>) membersByType).entrySet()) {
+        if (entry.getValue() instanceof List) {
+          members.put(entry.getKey(), new HashSet<>((List<String>) entry.getValue()));
+        }
+      }
+    }
+    if (!(types instanceof List) && members.isEmpty()) {
+      return ALL;
+    }
+    return new StatsFilter(types instanceof List ? new HashSet<>((List<String>) types) : null, members);
+  }
+
+  boolean acceptsType(String type) {
+    return types == null || types.contains(type);
+  }
+
+  /**
+   * @return the members to keep for this type, or {@code null} to keep them all.
+   */
+  @Nullable
+  Set<String> membersOf(String type) {
+    return members.get(type);
+  }
+}
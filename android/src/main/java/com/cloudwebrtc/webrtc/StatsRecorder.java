@@ -0,0 +1,258 @@
+package com.cloudwebrtc.webrtc;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsCollectorCallback;
+import org.webrtc.RTCStatsReport;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Records selected stats members of a peer connection into fixed-size ring buffers, for
+ * post-call diagnostics. Each (report id, member) pair is interned as a series with its own
+ * {@code long[]} or {@code double[]} buffer, allocated the first time the series is seen;
+ * afterwards recording a sample does not allocate. The number of samples kept covers the
+ * configured time window, reduced if needed to fit the memory budget.
+ *
+ * Only accessed on the scheduler thread.
+ */
+class StatsRecorder {
+  static final int BINARY_MAGIC = 0x46575348; // "FWSH"
+  static final int BINARY_VERSION = 1;
+  /** Largest memory budget accepted, keeping every buffer addressable by an int. */
+  static final long MAX_MEMORY_BUDGET = 256L * 1024 * 1024;
+
+  private static final long MISSING_LONG = Long.MIN_VALUE;
+
+  private final PeerConnectionObserver observer;
+  private final ScheduledExecutorService scheduler;
+  private final ScheduledFuture<?> future;
+  /** Recorded members by stats type. */
+  private final Map<String, String[]> membersByType;
+  private final int maxSeries;
+  private final int capacity;
+
+  private final long[] timestamps;
+  private int head = 0;
+  private int count = 0;
+
+  /** Series indexes of each report id, in the order of the members of its type. */
+  private final Map<String, int[]> seriesByReportId = new HashMap<>();
+  private final List<String> seriesNames = new ArrayList<>();
+  private final List<long[]> longSeries = new ArrayList<>();
+  private final List<double[]> doubleSeries = new ArrayList<>();
+  /** Makes {@link #cancel} and {@link #collect} mutually exclusive. */
+  private final Object collectLock = new Object();
+  /** The last report delivered on the signaling thread and not handled yet. */
+  private final AtomicReference<RTCStatsReport> pendingReport = new AtomicReference<>();
+  // Created once, so that collecting a sample allocates no callback or Runnable.
+  private final RTCStatsCollectorCallback reportCallback = this::onReport;
+  private final Runnable pendingReportTask = this::handlePendingReport;
+  private volatile boolean cancelled = false;
+
+  /**
+   * @param membersByType  members to record, by stats type.
+   * @param maxSeries      largest number of (report id, member) pairs recorded, at least 1.
+   * @param memoryBudget   bytes available for the sample buffers, at most
+   *                       {@link #MAX_MEMORY_BUDGET}.
+   */
+  StatsRecorder(PeerConnectionObserver observer, Map<String, List<String>> membersByType, long sampleIntervalMs,
+      long windowMs, long memoryBudget, int maxSeries, ScheduledExecutorService scheduler) {
+    this.observer = observer;
+    this.scheduler = scheduler;
+    this.membersByType = new HashMap<>();
+    for (Map.Entry<String, List<String>> entry : membersByType.entrySet()) {
+      this.membersByType.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+    }
+    this.maxSeries = maxSeries;
+    // Every sample costs a timestamp plus one 8-byte slot per series.
+    long samplesInBudget = memoryBudget / (8L * (maxSeries + 1));
+    this.capacity = (int) Math.max(2, Math.min(Math.min(windowMs / sampleIntervalMs, samplesInBudget),
+        Integer.MAX_VALUE));
+    this.timestamps = new long[capacity];
+    this.future = scheduler.scheduleWithFixedDelay(this::collect, 0, sampleIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Waits for a collection in progress, so that the peer connection can be disposed once
+   * this returns.
+   */
+  void cancel() {
+    synchronized (collectLock) {
+      cancelled = true;
+    }
+    future.cancel(false);
+  }
+
+  private void collect() {
+    synchronized (collectLock) {
+      PeerConnection peerConnection = observer.getPeerConnection();
+      if (cancelled || peerConnection == null) {
+        return;
+      }
+      peerConnection.getStats(reportCallback);
+    }
+  }
+
+  private void onReport(RTCStatsReport report) {
+    // A task is only queued when none is pending; a newer report replaces the pending one.
+    if (!cancelled && pendingReport.getAndSet(report) == null) {
+      scheduler.execute(pendingReportTask);
+    }
+  }
+
+  private void handlePendingReport() {
+    RTCStatsReport report = pendingReport.getAndSet(null);
+    if (report != null) {
+      record(report);
+    }
+  }
+
+  private void record(RTCStatsReport report) {
+    int row = (head + count) % capacity;
+    if (count == capacity) {
+      head = (head + 1) % capacity;
+    } else {
+      count++;
+    }
+    timestamps[row] = (long) (report.getTimestampUs() / 1000);
+    for (int i = 0; i < seriesNames.size(); i++) {
+      long[] longs = longSeries.get(i);
+      if (longs != null) {
+        longs[row] = MISSING_LONG;
+      } else {
+        doubleSeries.get(i)[row] = Double.NaN;
+      }
+    }
+    for (RTCStats stats : report.getStatsMap().values()) {
+      String[] members = membersByType.get(stats.getType());
+      if (members == null) {
+        continue;
+      }
+      Map<String, Object> values = stats.getMembers();
+      int[] series = seriesByReportId.get(stats.getId());
+      for (int m = 0; m < members.length; m++) {
+        // Once maxSeries are recorded, new report ids and members are skipped without
+        // allocating anything.
+        if ((series == null || series[m] < 0) && seriesNames.size() >= maxSeries) {
+          continue;
+        }
+        Object value = values.get(members[m]);
+        if (!(value instanceof Number)) {
+          continue;
+        }
+        if (series == null) {
+          series = new int[members.length];
+          Arrays.fill(series, -1);
+          seriesByReportId.put(stats.getId(), series);
+        }
+        if (series[m] < 0) {
+          series[m] = internSeries(stats.getId() + "." + members[m], value);
+        }
+        long[] longs = longSeries.get(series[m]);
+        if (longs != null) {
+          longs[row] = ((Number) value).longValue();
+        } else {
+          doubleSeries.get(series[m])[row] = ((Number) value).doubleValue();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the index of the new series, callers check {@code maxSeries} first.
+   */
+  private int internSeries(String name, Object sample) {
+    boolean floating = sample instanceof Double || sample instanceof Float;
+    long[] longs = floating ? null : new long[capacity];
+    double[] doubles = floating ? new double[capacity] : null;
+    if (longs != null) {
+      Arrays.fill(longs, MISSING_LONG);
+    } else {
+      Arrays.fill(doubles, Double.NaN);
+    }
+    seriesNames.add(name);
+    longSeries.add(longs);
+    doubleSeries.add(doubles);
+    return seriesNames.size() - 1;
+  }
+
+  /**
+   * Writes the recorded window as CSV: a {@code timestamp} column in milliseconds followed by
+   * one {@code <report id>.<member>} column per series, empty when the sample is missing.
+   */
+  void exportCsv(String path) throws IOException {
+    try (Writer writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(path)),
+        StandardCharsets.UTF_8)) {
+      StringBuilder line = new StringBuilder("timestamp");
+      for (String name : seriesNames) {
+        line.append(',').append(name);
+      }
+      writer.write(line.append('\n').toString());
+      for (int r = 0; r < count; r++) {
+        int row = (head + r) % capacity;
+        line.setLength(0);
+        line.append(timestamps[row]);
+        for (int i = 0; i < seriesNames.size(); i++) {
+          line.append(',');
+          long[] longs = longSeries.get(i);
+          if (longs != null) {
+            if (longs[row] != MISSING_LONG) {
+              line.append(longs[row]);
+            }
+          } else if (!Double.isNaN(doubleSeries.get(i)[row])) {
+            line.append(doubleSeries.get(i)[row]);
+          }
+        }
+        writer.write(line.append('\n').toString());
+      }
+    }
+  }
+
+  /**
+   * Writes the recorded window in a compact big-endian binary form: magic, version, series
+   * count, sample count, then per series its name (modified UTF-8) and a type byte (0 long,
+   * 1 double), then per sample its timestamp in milliseconds followed by one 8-byte value per
+   * series ({@link Long#MIN_VALUE} or NaN when missing).
+   */
+  void exportBinary(String path) throws IOException {
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+      output.writeInt(BINARY_MAGIC);
+      output.writeInt(BINARY_VERSION);
+      output.writeInt(seriesNames.size());
+      output.writeInt(count);
+      for (int i = 0; i < seriesNames.size(); i++) {
+        output.writeUTF(seriesNames.get(i));
+        output.writeByte(longSeries.get(i) != null ? 0 : 1);
+      }
+      for (int r = 0; r < count; r++) {
+        int row = (head + r) % capacity;
+        output.writeLong(timestamps[row]);
+        for (int i = 0; i < seriesNames.size(); i++) {
+          long[] longs = longSeries.get(i);
+          if (longs != null) {
+            output.writeLong(longs[row]);
+          } else {
+            output.writeDouble(doubleSeries.get(i)[row]);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.cloudwebrtc.webrtc;
+
+import com.cloudwebrtc.webrtc.utils.ConstraintsArray;
+import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsCollectorCallback;
+import org.webrtc.RTCStatsReport;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Collects the stats of a peer connection on a background timer and sends only what changed
+ * since the previous collection as an {@code onStatsDelta} event:
+ * <ul>
+ *   <li>{@code added}: reports seen for the first time, with all their members,</li>
+ *   <li>{@code removed}: ids of the reports which disappeared,</li>
+ *   <li>{@code changed}: for the other reports, the members whose value changed, or null
+ *   for the removed ones.</li>
+ * </ul>
+ * The first event carries the whole report as {@code added}.
+ */
+class StatsSubscription {
+  private final PeerConnectionObserver observer;
+  private final StatsFilter filter;
+  private final ScheduledExecutorService scheduler;
+  private final ScheduledFuture<?> future;
+  /** Members of the previous collection by report id, only accessed on the scheduler thread. */
+  private final Map<String, Map<String, Object>> previous = new HashMap<>();
+  /** Makes {@link #cancel} and {@link #collect} mutually exclusive. */
+  private final Object collectLock = new Object();
+  /** The last report delivered on the signaling thread and not handled yet. */
+  private final AtomicReference<RTCStatsReport> pendingReport = new AtomicReference<>();
+  private final RTCStatsCollectorCallback reportCallback = this::onReport;
+  private final Runnable pendingReportTask = this::handlePendingReport;
+  private volatile boolean cancelled = false;
+
+  StatsSubscription(PeerConnectionObserver observer, long intervalMs, StatsFilter filter,
+      ScheduledExecutorService scheduler) {
+    this.observer = observer;
+    this.filter = filter;
+    this.scheduler = scheduler;
+    this.future = scheduler.scheduleWithFixedDelay(this::collect, 0, intervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Waits for a collection in progress, so that the peer connection can be disposed once
+   * this returns.
+   */
+  void cancel() {
+    synchronized (collectLock) {
+      cancelled = true;
+    }
+    future.cancel(false);
+  }
+
+  private void collect() {
+    synchronized (collectLock) {
+      PeerConnection peerConnection = observer.getPeerConnection();
+      if (cancelled || peerConnection == null) {
+        return;
+      }
+      // The report is delivered on the signaling thread, diff it on the scheduler thread.
+      peerConnection.getStats(reportCallback);
+    }
+  }
+
+  private void onReport(RTCStatsReport report) {
+    // A report which was not diffed yet is superseded by the newer one.
+    if (!cancelled && pendingReport.getAndSet(report) == null) {
+      scheduler.execute(pendingReportTask);
+    }
+  }
+
+  private void handlePendingReport() {
+    RTCStatsReport report = pendingReport.getAndSet(null);
+    if (report != null) {
+      handleReport(report);
+    }
+  }
+
+  private void handleReport(RTCStatsReport report) {
+    if (cancelled) {
+      return;
+    }
+    ConstraintsArray added = new ConstraintsArray();
+    ConstraintsArray changed = new ConstraintsArray();
+    ConstraintsArray removed = new ConstraintsArray();
+    Map<String, RTCStats> statsMap = report.getStatsMap();
+
+    for (RTCStats stats : statsMap.values()) {
+      if (!filter.acceptsType(stats.getType())) {
+        continue;
+      }
+      Map<String, Object> values = PeerConnectionObserver.statsValues(stats, filter.membersOf(stats.getType()));
+      Map<String, Object> previousValues = previous.get(stats.getId());
+      if (previousValues == null) {
+        ConstraintsMap entry = new ConstraintsMap();
+        entry.putString("id", stats.getId());
+        entry.putString("type", stats.getType());
+        entry.putDouble("timestamp", stats.getTimestampUs());
+        entry.putMap("values", values);
+        added.pushMap(entry);
+      } else {
+        Map<String, Object> changedValues = new HashMap<>();
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+          if (!Objects.equals(value.getValue(), previousValues.get(value.getKey()))) {
+            changedValues.put(value.getKey(), value.getValue());
+          }
+        }
+        for (String key : previousValues.keySet()) {
+          if (!values.containsKey(key)) {
+            changedValues.put(key, null);
+          }
+        }
+        if (!changedValues.isEmpty()) {
+          ConstraintsMap entry = new ConstraintsMap();
+          entry.putString("id", stats.getId());
+          entry.putDouble("timestamp", stats.getTimestampUs());
+          entry.putMap("values", changedValues);
+          changed.pushMap(entry);
+        }
+      }
+      previous.put(stats.getId(), values);
+    }
+
+    for (Iterator<String> i = previous.keySet().iterator(); i.hasNext(); ) {
+      String id = i.next();
+      if (!statsMap.containsKey(id)) {
+        removed.pushString(id);
+        i.remove();
+      }
+    }
+
+    if (added.size() == 0 && changed.size() == 0 && removed.size() == 0) {
+      return;
+    }
+    ConstraintsMap params = new ConstraintsMap();
+    params.putString("event", "onStatsDelta");
+    params.putDouble("timestamp", report.getTimestampUs());
+    params.putArray("added", added.toArrayList());
+    params.putArray("changed", changed.toArrayList());
+    params.putArray("removed", removed.toArrayList());
+    observer.sendEvent(params);
+  }
+}
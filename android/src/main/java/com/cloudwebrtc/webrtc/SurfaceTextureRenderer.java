@@ -20,7 +20,8 @@ import java.util.concurrent.CountDownLatch;
  * Interaction from SurfaceHolder lifecycle in surfaceCreated, surfaceChanged, and surfaceDestroyed.
  */
 public class SurfaceTextureRenderer extends EglRenderer {
-  // Callback for reporting renderer events. Read-only after initilization so no lock required.
+  // Callback for reporting renderer events. Replaced by init() and resetFrameState(), guarded
+  // by |layoutLock|.
   private RendererCommon.RendererEvents rendererEvents;
   private final Object layoutLock = new Object();
   private boolean isRenderingPaused;
@@ -51,8 +52,8 @@ public class SurfaceTextureRenderer extends EglRenderer {
                    RendererCommon.RendererEvents rendererEvents, final int[] configAttributes,
                    RendererCommon.GlDrawer drawer) {
     ThreadUtils.checkIsOnMainThread();
-    this.rendererEvents = rendererEvents;
     synchronized (layoutLock) {
+      this.rendererEvents = rendererEvents;
       isFirstFrameRendered = false;
       rotatedFrameWidth = 0;
       rotatedFrameHeight = 0;
@@ -60,6 +61,22 @@ public class SurfaceTextureRenderer extends EglRenderer {
     }
     super.init(sharedContext, configAttributes, drawer);
   }
+
+  /**
+   * Forgets the first frame and the frame size of the previous source, so that the next
+   * frames are reported to |rendererEvents| as those of a new source, without releasing the
+   * EGL context, surface and render thread.
+   */
+  public void resetFrameState(RendererCommon.RendererEvents rendererEvents) {
+    synchronized (layoutLock) {
+      this.rendererEvents = rendererEvents;
+      isFirstFrameRendered = false;
+      rotatedFrameWidth = 0;
+      rotatedFrameHeight = 0;
+      frameRotation = -1;
+    }
+  }
+
   @Override
   public void init(final EglBase.Context sharedContext, final int[] configAttributes,
                    RendererCommon.GlDrawer drawer) {
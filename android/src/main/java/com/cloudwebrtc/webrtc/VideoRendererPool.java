@@ -0,0 +1,70 @@
+package com.cloudwebrtc.webrtc;
+
+import androidx.annotation.Nullable;
+
+import com.cloudwebrtc.webrtc.utils.ConstraintsMap;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps disposed {@link FlutterRTCVideoRenderer}s parked, with their texture, event channel,
+ * render thread and EGL context, so that the next {@code createVideoRenderer} can reuse one
+ * instead of allocating them again. Holds at most {@code maxSize} renderers; the pool is
+ * disabled while {@code maxSize} is 0.
+ *
+ * Only accessed on the platform thread.
+ */
+class VideoRendererPool {
+  private final ArrayDeque<FlutterRTCVideoRenderer> parked = new ArrayDeque<>();
+  private int maxSize = 0;
+  private long hits = 0;
+  private long misses = 0;
+
+  /**
+   * @return a parked renderer, or {@code null} if the caller has to create one.
+   */
+  @Nullable
+  FlutterRTCVideoRenderer acquire() {
+    FlutterRTCVideoRenderer renderer = parked.pollFirst();
+    if (renderer != null) {
+      hits++;
+    } else {
+      misses++;
+    }
+    return renderer;
+  }
+
+  /**
+   * Parks {@code renderer} if there is room left, or disposes it.
+   */
+  void release(FlutterRTCVideoRenderer renderer) {
+    if (parked.size() < maxSize) {
+      renderer.park();
+      parked.addFirst(renderer);
+    } else {
+      renderer.Dispose();
+    }
+  }
+
+  void setMaxSize(int maxSize) {
+    this.maxSize = Math.max(0, maxSize);
+    while (parked.size() > this.maxSize) {
+      parked.pollLast().Dispose();
+    }
+  }
+
+  void clear() {
+    while (!parked.isEmpty()) {
+      parked.pollLast().Dispose();
+    }
+  }
+
+  ConstraintsMap getStats() {
+    ConstraintsMap params = new ConstraintsMap();
+    params.putInt("size", parked.size());
+    params.putInt("maxSize", maxSize);
+    params.putLong("hits", hits);
+    params.putLong("misses", misses);
+    return params;
+  }
+}
@@ -0,0 +1,165 @@
+package com.cloudwebrtc.webrtc.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * An {@link EventChannel.EventSink} which can be used from any thread and wakes the main
+ * thread at most once per looper turn (or once per frame when frame aligned) instead of
+ * once per event. Events posted in between are delivered in order: a single event as is,
+ * several as one {@code List}.
+ */
+public final class BatchingEventSink implements EventChannel.EventSink {
+    private static final Object END_OF_STREAM = new Object();
+
+    private static final class ErrorEvent {
+        final String code;
+        final String message;
+        final Object details;
+
+        ErrorEvent(String code, String message, Object details) {
+            this.code = code;
+            this.message = message;
+            this.details = details;
+        }
+    }
+
+    final private EventChannel.EventSink eventSink;
+    final private Handler handler = new Handler(Looper.getMainLooper());
+    final private Choreographer choreographer;
+    final private ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+    final private AtomicBoolean scheduled = new AtomicBoolean();
+    final private Runnable drainRunnable = this::drain;
+    final private Choreographer.FrameCallback drainFrameCallback = frameTimeNanos -> drain();
+
+    final private AtomicInteger depth = new AtomicInteger();
+    /** When the oldest undelivered event was posted. */
+    private volatile long pendingSinceNanos;
+    private volatile long maxDepth;
+    private volatile long maxDelayNanos;
+    private volatile long totalDelayNanos;
+    private volatile long drainCount;
+
+    public BatchingEventSink(EventChannel.EventSink eventSink) {
+        this(eventSink, false);
+    }
+
+    /**
+     * @param alignToFrame drain once per Choreographer frame instead of once per looper turn.
+     *                     Only honoured when created on the main thread. Only meant for
+     *                     rendering events: no frames are produced while the app is in the
+     *                     background or the screen is off, which would hold the events back.
+     */
+    public BatchingEventSink(EventChannel.EventSink eventSink, boolean alignToFrame) {
+        this.eventSink = eventSink;
+        this.choreographer = alignToFrame && Looper.getMainLooper() == Looper.myLooper()
+                ? Choreographer.getInstance() : null;
+    }
+
+    @Override
+    public void success(Object o) {
+        enqueue(o);
+    }
+
+    @Override
+    public void error(String s, String s1, Object o) {
+        enqueue(new ErrorEvent(s, s1, o));
+    }
+
+    @Override
+    public void endOfStream() {
+        enqueue(END_OF_STREAM);
+    }
+
+    /**
+     * Runs {@code action} on the main thread, in order with the events posted before and after
+     * it, for messages sent on another channel which must not overtake them.
+     */
+    public void execute(Runnable action) {
+        enqueue(action);
+    }
+
+    private void enqueue(Object event) {
+        queue.offer(event);
+        int currentDepth = depth.incrementAndGet();
+        if (currentDepth > maxDepth) {
+            maxDepth = currentDepth;
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            pendingSinceNanos = System.nanoTime();
+            if (choreographer != null) {
+                choreographer.postFrameCallback(drainFrameCallback);
+            } else {
+                handler.post(drainRunnable);
+            }
+        }
+    }
+
+    private void drain() {
+        scheduled.set(false);
+        long delayNanos = System.nanoTime() - pendingSinceNanos;
+        if (delayNanos > maxDelayNanos) {
+            maxDelayNanos = delayNanos;
+        }
+        totalDelayNanos += delayNanos;
+        drainCount++;
+        ArrayList<Object> batch = new ArrayList<>();
+        Object event;
+        while ((event = queue.poll()) != null) {
+            depth.decrementAndGet();
+            if (event instanceof ErrorEvent) {
+                flush(batch);
+                ErrorEvent error = (ErrorEvent) event;
+                eventSink.error(error.code, error.message, error.details);
+            } else if (event == END_OF_STREAM) {
+                flush(batch);
+                eventSink.endOfStream();
+            } else if (event instanceof Runnable) {
+                flush(batch);
+                ((Runnable) event).run();
+            } else {
+                batch.add(event);
+            }
+        }
+        flush(batch);
+    }
+
+    /** Events posted but not delivered yet. */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public long getMaxDepth() {
+        return maxDepth;
+    }
+
+    /** Longest time an event waited for the main thread. */
+    public long getMaxDelayNanos() {
+        return maxDelayNanos;
+    }
+
+    public long getAverageDelayNanos() {
+        long count = drainCount;
+        return count == 0 ? 0 : totalDelayNanos / count;
+    }
+
+    private void flush(ArrayList<Object> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (batch.size() == 1) {
+            eventSink.success(batch.get(0));
+        } else {
+            eventSink.success(new ArrayList<>(batch));
+        }
+        batch.clear();
+    }
+}
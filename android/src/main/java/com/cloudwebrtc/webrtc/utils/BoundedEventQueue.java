@@ -0,0 +1,160 @@
+package com.cloudwebrtc.webrtc.utils;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ring buffer holding the events of a channel until Dart starts listening, bounded both by
+ * event count and by an estimated byte budget. What happens on overflow is decided by the
+ * {@link OverflowPolicy}; what was dropped or coalesced is counted.
+ */
+public final class BoundedEventQueue {
+
+    public enum OverflowPolicy {
+        /** Evict the oldest buffered events to make room. */
+        DROP_OLDEST,
+        /** Reject the incoming event. */
+        DROP_NEWEST,
+        /**
+         * Replace the buffered event with the same key, if any, then evict the oldest
+         * ones to make room.
+         */
+        COALESCE_BY_KEY,
+    }
+
+    /** Defaults used by the queues created after they are changed. */
+    public static volatile int defaultCapacity = 256;
+    public static volatile long defaultByteBudget = 4 * 1024 * 1024;
+    public static volatile OverflowPolicy defaultPolicy = OverflowPolicy.DROP_OLDEST;
+
+    final private Object[] events;
+    final private long[] sizes;
+    final private String[] keys;
+    final private long byteBudget;
+    final private OverflowPolicy policy;
+    private int head;
+    private int count;
+    private long bytes;
+    private long droppedCount;
+    private long coalescedCount;
+
+    public BoundedEventQueue() {
+        this(defaultCapacity, defaultByteBudget, defaultPolicy);
+    }
+
+    public BoundedEventQueue(int capacity, long byteBudget, OverflowPolicy policy) {
+        this.events = new Object[Math.max(1, capacity)];
+        this.sizes = new long[events.length];
+        this.keys = new String[events.length];
+        this.byteBudget = byteBudget;
+        this.policy = policy;
+    }
+
+    public synchronized void add(Object event) {
+        add(event, null);
+    }
+
+    /**
+     * @param key identifies events superseded by a newer one with the same key, only used
+     *            with {@link OverflowPolicy#COALESCE_BY_KEY}.
+     */
+    public synchronized void add(Object event, @Nullable String key) {
+        long size = estimateSize(event);
+        if (policy == OverflowPolicy.COALESCE_BY_KEY && key != null) {
+            for (int i = 0; i < count; i++) {
+                int index = (head + i) % events.length;
+                if (key.equals(keys[index])) {
+                    bytes += size - sizes[index];
+                    events[index] = event;
+                    sizes[index] = size;
+                    coalescedCount++;
+                    return;
+                }
+            }
+        }
+        if (size > byteBudget) {
+            droppedCount++;
+            return;
+        }
+        while (count == events.length || bytes + size > byteBudget) {
+            if (policy == OverflowPolicy.DROP_NEWEST) {
+                droppedCount++;
+                return;
+            }
+            removeOldest();
+            droppedCount++;
+        }
+        int index = (head + count) % events.length;
+        events[index] = event;
+        sizes[index] = size;
+        keys[index] = key;
+        bytes += size;
+        count++;
+    }
+
+    /**
+     * Removes and returns every buffered event, oldest first.
+     */
+    public synchronized List<Object> drain() {
+        List<Object> drained = new ArrayList<>(count);
+        while (count > 0) {
+            drained.add(events[head]);
+            removeOldest();
+        }
+        return drained;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    private void removeOldest() {
+        bytes -= sizes[head];
+        events[head] = null;
+        keys[head] = null;
+        head = (head + 1) % events.length;
+        count--;
+    }
+
+    /**
+     * Rough size of an event as sent over the standard codec.
+     */
+    static long estimateSize(Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof ByteBuffer) {
+            return ((ByteBuffer) value).remaining();
+        } else if (value instanceof String) {
+            return ((String) value).length();
+        } else if (value instanceof Map) {
+            long size = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        } else if (value instanceof List) {
+            long size = 0;
+            for (Object item : (List<?>) value) {
+                size += estimateSize(item);
+            }
+            return size;
+        }
+        return 8;
+    }
+}
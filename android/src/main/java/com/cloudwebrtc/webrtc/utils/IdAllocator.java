@@ -0,0 +1,25 @@
+package com.cloudwebrtc.webrtc.utils;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out ids which are unique by construction: a per-instance random prefix followed
+ * by a monotonic counter, so no lookup is needed to rule out collisions.
+ */
+public final class IdAllocator {
+    final private String prefix;
+    final private AtomicLong counter = new AtomicLong();
+
+    public IdAllocator() {
+        this(UUID.randomUUID().toString().substring(0, 8) + "-");
+    }
+
+    public IdAllocator(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String next() {
+        return prefix + counter.incrementAndGet();
+    }
+}
@@ -0,0 +1,39 @@
+package com.cloudwebrtc.webrtc.utils;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs submitted tasks one at a time, in submission order, on top of a
+ * shared {@link Executor}. Several serial executors backed by the same pool
+ * run in parallel with each other while each one stays strictly ordered.
+ */
+public final class SerialExecutor implements Executor {
+    final private ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    final private Executor executor;
+    private Runnable active;
+
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(final Runnable r) {
+        tasks.offer(() -> {
+            try {
+                r.run();
+            } finally {
+                scheduleNext();
+            }
+        });
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    private synchronized void scheduleNext() {
+        if ((active = tasks.poll()) != null) {
+            executor.execute(active);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.cloudwebrtc.webrtc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+/**
+ * Round trips messages through two {@link DataChannelCompression}s, one per peer, the way a
+ * loopback channel would.
+ */
+public class DataChannelCompressionTest {
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] repetitiveJson(int records) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < records; i++) {
+            json.append("{\"id\":").append(i).append(",\"state\":\"connected\",\"muted\":false},");
+        }
+        return json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void deflatesAndInflatesLargeMessages() throws DataFormatException {
+        DataChannelCompression sender = new DataChannelCompression(DataChannelCompression.DEFAULT_THRESHOLD);
+        DataChannelCompression receiver = new DataChannelCompression(DataChannelCompression.DEFAULT_THRESHOLD);
+        byte[] payload = repetitiveJson(200);
+
+        ByteBuffer message = sender.compress(ByteBuffer.wrap(payload));
+        assertEquals(DataChannelCompression.DEFLATED, message.get(0));
+        assertTrue(message.remaining() < payload.length);
+        assertArrayEquals(payload, bytes(receiver.decompress(message)));
+
+        // The reused Deflater and Inflater must not leak state into the next message.
+        byte[] next = repetitiveJson(50);
+        assertArrayEquals(next, bytes(receiver.decompress(sender.compress(ByteBuffer.wrap(next)))));
+    }
+
+    @Test
+    public void sendsMessagesBelowThresholdRaw() throws DataFormatException {
+        DataChannelCompression sender = new DataChannelCompression(DataChannelCompression.DEFAULT_THRESHOLD);
+        DataChannelCompression receiver = new DataChannelCompression(DataChannelCompression.DEFAULT_THRESHOLD);
+        byte[] payload = "{\"ping\":1}".getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer message = sender.compress(ByteBuffer.wrap(payload));
+        assertEquals(DataChannelCompression.RAW, message.get(0));
+        assertEquals(payload.length + 1, message.remaining());
+        assertArrayEquals(payload, bytes(receiver.decompress(message)));
+    }
+
+    @Test
+    public void sendsIncompressibleMessagesRaw() throws DataFormatException {
+        DataChannelCompression sender = new DataChannelCompression(DataChannelCompression.DEFAULT_THRESHOLD);
+        DataChannelCompression receiver = new DataChannelCompression(DataChannelCompression.DEFAULT_THRESHOLD);
+        byte[] payload = new byte[4096];
+        new Random(42).nextBytes(payload);
+
+        ByteBuffer message = sender.compress(ByteBuffer.wrap(payload));
+        assertEquals(DataChannelCompression.RAW, message.get(0));
+        assertEquals(payload.length + 1, message.remaining());
+        assertArrayEquals(payload, bytes(receiver.decompress(message)));
+    }
+
+    @Test
+    public void rejectsMessagesInflatingBeyondLimit() {
+        // Deflate zeros chunk by chunk, so the test never holds the inflated payload itself.
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        message.write(DataChannelCompression.DEFLATED);
+        byte[] zeros = new byte[1024 * 1024];
+        byte[] chunk = new byte[8192];
+        for (long written = 0; written <= DataChannelCompression.MAX_INFLATED_SIZE; written += zeros.length) {
+            deflater.setInput(zeros);
+            while (!deflater.needsInput()) {
+                message.write(chunk, 0, deflater.deflate(chunk));
+            }
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            message.write(chunk, 0, deflater.deflate(chunk));
+        }
+        deflater.end();
+
+        DataChannelCompression receiver = new DataChannelCompression(DataChannelCompression.DEFAULT_THRESHOLD);
+        try {
+            receiver.decompress(ByteBuffer.wrap(message.toByteArray()));
+            fail("expected the inflated size limit to be enforced");
+        } catch (DataFormatException e) {
+            assertTrue(e.getMessage().contains(String.valueOf(DataChannelCompression.MAX_INFLATED_SIZE)));
+        }
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void rejectsUnknownMarkers() throws DataFormatException {
+        new DataChannelCompression(DataChannelCompression.DEFAULT_THRESHOLD)
+                .decompress(ByteBuffer.wrap(new byte[]{7, 1, 2, 3}));
+    }
+}
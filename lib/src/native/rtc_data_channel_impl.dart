@@ -1,4 +1,6 @@
 import 'dart:async';
+import 'dart:convert';
+import 'dart:typed_data';
 
 import 'package:flutter/services.dart';
 
@@ -24,6 +26,7 @@ class RTCDataChannelNative extends RTCDataChannel {
     }
     _eventSubscription = _eventChannelFor(_peerConnectionId, _flutterId)
         .receiveBroadcastStream()
+        .expand(unbatchEvents)
         .listen(eventListener, onError: errorListener);
   }
   final String _peerConnectionId;
@@ -58,6 +61,20 @@ class RTCDataChannelNative extends RTCDataChannel {
   final _messageController =
       StreamController<RTCDataChannelMessage>.broadcast(sync: true);
 
+  final _transferController =
+      StreamController<Map<dynamic, dynamic>>.broadcast(sync: true);
+
+  final _metricsController =
+      StreamController<Map<dynamic, dynamic>>.broadcast(sync: true);
+
+  /// Android only: periodic counters enabled with [setMetricsInterval].
+  Stream<Map<dynamic, dynamic>> get metricsEvents => _metricsController.stream;
+
+  /// Android only: progress, completion and failure events of the chunked
+  /// transfers started with [sendFile] or received after [receiveTransfers].
+  Stream<Map<dynamic, dynamic>> get transferEvents =>
+      _transferController.stream;
+
   /// RTCDataChannel event listener.
   void eventListener(dynamic event) {
     final Map<dynamic, dynamic> map = event;
@@ -81,9 +98,7 @@ class RTCDataChannelNative extends RTCDataChannel {
           message = RTCDataChannelMessage(data);
         }
 
-        onMessage?.call(message);
-
-        _messageController.add(message);
+        _dispatchMessage(message);
         break;
 
       case 'dataChannelBufferedAmountChange':
@@ -95,6 +110,66 @@ class RTCDataChannelNative extends RTCDataChannel {
         }
         onBufferedAmountChange?.call(_bufferedAmount, map['changedAmount']);
         break;
+
+      case 'dataChannelMetrics':
+        _metricsController.add(map);
+        break;
+      case 'dataChannelTransferProgress':
+      case 'dataChannelTransferComplete':
+      case 'dataChannelTransferFailed':
+        _transferController.add(map);
+        break;
+      case 'dataChannelBufferedAmountLow':
+        _bufferedAmount = map['bufferedAmount'];
+        onBufferedAmountLow?.call(_bufferedAmount);
+        break;
+    }
+  }
+
+  void _dispatchMessage(RTCDataChannelMessage message) {
+    onMessage?.call(message);
+
+    _messageController.add(message);
+  }
+
+  /// Decodes a frame of the raw message channel: a flags byte (bit 0 set for
+  /// binary), three reserved bytes and a big-endian uint32 payload length,
+  /// followed by the payload.
+  Future<ByteData?> _rawMessageHandler(ByteData? frame) async {
+    if (frame == null) {
+      return null;
+    }
+    final binary = frame.getUint8(0) & 1 != 0;
+    final length = frame.getUint32(4);
+    final payload = frame.buffer.asUint8List(frame.offsetInBytes + 8, length);
+    _dispatchMessage(binary
+        ? RTCDataChannelMessage.fromBinary(payload)
+        : RTCDataChannelMessage(utf8.decode(payload)));
+    return null;
+  }
+
+  BasicMessageChannel<ByteData> _messageChannelFor(
+      String peerConnectionId, String flutterId) {
+    return BasicMessageChannel<ByteData>(
+        'FlutterWebRTC/dataChannelMessage$peerConnectionId$flutterId',
+        const BinaryCodec());
+  }
+
+  /// Android only: receive messages as framed payloads on a dedicated binary
+  /// channel instead of encoded events, skipping the map and the standard
+  /// codec for high-rate channels.
+  Future<void> setRawMessages(bool enabled) async {
+    final channel = _messageChannelFor(_peerConnectionId, _flutterId);
+    if (enabled) {
+      channel.setMessageHandler(_rawMessageHandler);
+    }
+    await WebRTC.invokeMethod('dataChannelSetRawMessages', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _flutterId,
+      'enabled': enabled,
+    });
+    if (!enabled) {
+      channel.setMessageHandler(null);
     }
   }
 
@@ -119,11 +194,118 @@ class RTCDataChannelNative extends RTCDataChannel {
     });
   }
 
+  /// Android only: message and byte counters, peak buffered amount, send
+  /// queue length, events dropped or coalesced before [onMessage] and the
+  /// state stream were listened to, and event delivery depth and delay of
+  /// this channel.
+  Future<Map<dynamic, dynamic>> getMetrics() async {
+    final metrics = await WebRTC.invokeMethod<Map<dynamic, dynamic>, dynamic>(
+        'getDataChannelMetrics', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _flutterId,
+    });
+    return metrics ?? {};
+  }
+
+  /// Android only: emits [metricsEvents] every [intervalMs], 0 stops them.
+  Future<void> setMetricsInterval(int intervalMs) async {
+    await WebRTC.invokeMethod('dataChannelSetMetricsInterval', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _flutterId,
+      'intervalMs': intervalMs,
+    });
+  }
+
+  /// Android only: deflates outgoing messages of at least [threshold] bytes
+  /// and inflates incoming ones. The remote peer must enable it as well.
+  Future<void> setCompression(bool enabled, {int? threshold}) async {
+    await WebRTC.invokeMethod('dataChannelSetCompression', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _flutterId,
+      'enabled': enabled,
+      if (threshold != null) 'threshold': threshold,
+    });
+  }
+
+  /// Android only: holds sends in the native layer while more than
+  /// [highWatermark] bytes are buffered and flushes them as the buffer drains.
+  /// Buffered amount changes are then replaced by a single
+  /// [onBufferedAmountLow] call once the buffer falls to [lowWatermark].
+  /// A [highWatermark] of 0 disables flow control.
+  Future<void> setFlowControl(int highWatermark, int lowWatermark) async {
+    bufferedAmountLowThreshold = highWatermark > 0 ? lowWatermark : null;
+    await WebRTC.invokeMethod('dataChannelSetFlowControl', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _flutterId,
+      'highWatermark': highWatermark,
+      'lowWatermark': lowWatermark,
+    });
+  }
+
+  /// Android only: streams the file at [path] in chunks of [chunkSize] bytes
+  /// without loading it in memory. Returns the transfer id used by the
+  /// [transferEvents].
+  Future<int> sendFile(String path, {int? chunkSize}) async {
+    final transferId = await WebRTC.invokeMethod<int, dynamic>(
+        'dataChannelSendFile', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _flutterId,
+      'path': path,
+      if (chunkSize != null) 'chunkSize': chunkSize,
+    });
+    return transferId!;
+  }
+
+  /// Android only: reassembles incoming chunked transfers into files in
+  /// [directory], or in memory up to [maxBufferSize] bytes per transfer.
+  /// Passing neither stops receiving transfers. While receiving, binary
+  /// messages starting with a valid transfer chunk header are taken for
+  /// chunks and not delivered to [onMessage].
+  Future<void> receiveTransfers({String? directory, int? maxBufferSize}) async {
+    await WebRTC.invokeMethod('dataChannelReceiveTransfers', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _flutterId,
+      'directory': directory,
+      'maxBufferSize': maxBufferSize,
+    });
+  }
+
+  Future<void> cancelTransfer(int transferId) async {
+    await WebRTC.invokeMethod('dataChannelCancelTransfer', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _flutterId,
+      'transferId': transferId,
+    });
+  }
+
+  /// Sends several messages in one platform channel round trip. Text is
+  /// encoded here so the native side does not decode and re-encode it.
+  /// Returns the number of messages the data channel accepted.
+  Future<int> sendBatch(List<RTCDataChannelMessage> messages) async {
+    final sent = await WebRTC.invokeMethod<int, dynamic>(
+        'dataChannelSendBatch', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'dataChannelId': _flutterId,
+      'messages': messages
+          .map((message) => <String, dynamic>{
+                'type': message.isBinary ? 'binary' : 'text',
+                'data': message.isBinary
+                    ? message.binary
+                    : Uint8List.fromList(utf8.encode(message.text)),
+              })
+          .toList(),
+    });
+    return sent ?? 0;
+  }
+
   @override
   Future<void> close() async {
     await _stateChangeController.close();
     await _messageController.close();
+    await _transferController.close();
+    await _metricsController.close();
     await _eventSubscription?.cancel();
+    _messageChannelFor(_peerConnectionId, _flutterId).setMessageHandler(null);
     await WebRTC.invokeMethod('dataChannelClose', <String, dynamic>{
       'peerConnectionId': _peerConnectionId,
       'dataChannelId': _flutterId
@@ -20,6 +20,7 @@ class RTCPeerConnectionNative extends RTCPeerConnection {
   RTCPeerConnectionNative(this._peerConnectionId, this._configuration) {
     _eventSubscription = _eventChannelFor(_peerConnectionId)
         .receiveBroadcastStream()
+        .expand(unbatchEvents)
         .listen(eventListener, onError: errorListener);
   }
 
@@ -34,6 +35,23 @@ class RTCPeerConnectionNative extends RTCPeerConnection {
   RTCIceGatheringState? _iceGatheringState;
   RTCIceConnectionState? _iceConnectionState;
   RTCPeerConnectionState? _connectionState;
+  final _subscribedStats = <String, StatsReport>{};
+  final _statsController = StreamController<List<StatsReport>>.broadcast();
+
+  final _callQualityController =
+      StreamController<Map<dynamic, dynamic>>.broadcast();
+
+  /// Android only: quality records sent by [startCallQualityMonitor], with
+  /// the round trip time of the selected candidate pair (`rttMs`) and, per
+  /// RTP stream, `bitrate`, `packetLoss` (%), `jitterMs`, `fps` and `rttMs`.
+  /// `packetLoss` of outbound streams is missing until two samples carry the
+  /// remote peer's loss reports.
+  Stream<Map<dynamic, dynamic>> get callQualityStream =>
+      _callQualityController.stream;
+
+  /// Android only: the stats collected by [subscribeStats], rebuilt from the
+  /// native deltas on every collection.
+  Stream<List<StatsReport>> get statsStream => _statsController.stream;
 
   final Map<String, dynamic> defaultSdpConstraints = {
     'mandatory': {
@@ -89,6 +107,13 @@ class RTCPeerConnectionNative extends RTCPeerConnection {
             cand['candidate'], cand['sdpMid'], cand['sdpMLineIndex']);
         onIceCandidate?.call(candidate);
         break;
+      case 'onCandidates':
+        List<dynamic> candidates = map['candidates'];
+        for (var cand in candidates) {
+          onIceCandidate?.call(RTCIceCandidate(
+              cand['candidate'], cand['sdpMid'], cand['sdpMLineIndex']));
+        }
+        break;
       case 'onAddStream':
         String streamId = map['streamId'];
 
@@ -187,6 +212,14 @@ class RTCPeerConnectionNative extends RTCPeerConnection {
             transceiver: transceiver));
         break;
 
+      case 'onStatsDelta':
+        _applyStatsDelta(map);
+        break;
+
+      case 'onCallQuality':
+        _callQualityController.add(map);
+        break;
+
       /// Other
       case 'onSelectedCandidatePairChanged':
 
@@ -222,12 +255,127 @@ class RTCPeerConnectionNative extends RTCPeerConnection {
   @override
   Future<void> dispose() async {
     await _eventSubscription?.cancel();
+    await _statsController.close();
+    await _callQualityController.close();
     await WebRTC.invokeMethod(
       'peerConnectionDispose',
       <String, dynamic>{'peerConnectionId': _peerConnectionId},
     );
   }
 
+  void _applyStatsDelta(Map<dynamic, dynamic> delta) {
+    for (var report in delta['added']) {
+      _subscribedStats[report['id']] = StatsReport(report['id'], report['type'],
+          (report['timestamp'] as num).toDouble(), report['values']);
+    }
+    for (var report in delta['changed']) {
+      final previous = _subscribedStats[report['id']];
+      if (previous == null) {
+        continue;
+      }
+      final values = Map<dynamic, dynamic>.of(previous.values);
+      (report['values'] as Map<dynamic, dynamic>).forEach((key, value) {
+        if (value == null) {
+          values.remove(key);
+        } else {
+          values[key] = value;
+        }
+      });
+      _subscribedStats[report['id']] = StatsReport(previous.id, previous.type,
+          (report['timestamp'] as num).toDouble(), values);
+    }
+    for (var id in delta['removed']) {
+      _subscribedStats.remove(id);
+    }
+    _statsController.add(_subscribedStats.values.toList());
+  }
+
+  /// Android only: collects the stats every [intervalMs] in the background
+  /// and receives only the members which changed, see [statsStream].
+  /// [types] and [members] restrict the collection as in [getFilteredStats].
+  Future<void> subscribeStats(int intervalMs,
+      {List<String>? types, Map<String, List<String>>? members}) async {
+    _subscribedStats.clear();
+    await WebRTC.invokeMethod('subscribeStats', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'intervalMs': intervalMs,
+      'filter': _statsFilter(types, members),
+    });
+  }
+
+  Future<void> unsubscribeStats() async {
+    await WebRTC.invokeMethod('unsubscribeStats', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+    });
+  }
+
+  /// Android only: samples the RTP counters every [sampleIntervalMs] and
+  /// reports rates over the last [windowSize] samples on [callQualityStream]
+  /// every [reportIntervalMs].
+  Future<void> startCallQualityMonitor(
+      {int sampleIntervalMs = 1000,
+      int windowSize = 5,
+      int? reportIntervalMs}) async {
+    await WebRTC.invokeMethod('startCallQualityMonitor', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'sampleIntervalMs': sampleIntervalMs,
+      'windowSize': windowSize,
+      'reportIntervalMs': reportIntervalMs ?? sampleIntervalMs,
+    });
+  }
+
+  Future<void> stopCallQualityMonitor() async {
+    await WebRTC.invokeMethod('stopCallQualityMonitor', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+    });
+  }
+
+  /// Android only: records the [members] (by stats type) of every report
+  /// every [sampleIntervalMs], keeping the last [windowMs] within
+  /// [memoryBudget] bytes, for [exportStatsHistory]. The recording stops
+  /// with the peer connection but stays exportable until it is disposed.
+  Future<void> startStatsRecorder(Map<String, List<String>> members,
+      {int sampleIntervalMs = 1000,
+      int windowMs = 10 * 60 * 1000,
+      int memoryBudget = 1024 * 1024,
+      int maxSeries = 64}) async {
+    await WebRTC.invokeMethod('startStatsRecorder', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'members': members,
+      'sampleIntervalMs': sampleIntervalMs,
+      'windowMs': windowMs,
+      'memoryBudget': memoryBudget,
+      'maxSeries': maxSeries,
+    });
+  }
+
+  Future<void> stopStatsRecorder() async {
+    await WebRTC.invokeMethod('stopStatsRecorder', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+    });
+  }
+
+  /// Android only: writes the recorded stats to [path] as `csv` or `binary`.
+  Future<void> exportStatsHistory(String path, {String format = 'csv'}) async {
+    await WebRTC.invokeMethod('exportStatsHistory', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+      'path': path,
+      'format': format,
+    });
+  }
+
+  /// Android only: the number of events still buffered until the event
+  /// stream is listened to (`pendingEvents`), and how many were dropped
+  /// (`droppedEvents`) or replaced by a newer one (`coalescedEvents`) on
+  /// overflow.
+  Future<Map<dynamic, dynamic>> getEventQueueStats() async {
+    final stats = await WebRTC.invokeMethod<Map<dynamic, dynamic>, dynamic>(
+        'getEventQueueStats', <String, dynamic>{
+      'peerConnectionId': _peerConnectionId,
+    });
+    return stats ?? {};
+  }
+
   EventChannel _eventChannelFor(String peerConnectionId) {
     return EventChannel('FlutterWebRTC/peerConnectionEvent$peerConnectionId');
   }
@@ -376,23 +524,88 @@ class RTCPeerConnectionNative extends RTCPeerConnection {
     }
   }
 
+  /// Adds several remote candidates in a single platform call.
+  Future<void> addCandidates(List<RTCIceCandidate> candidates) async {
+    try {
+      await WebRTC.invokeMethod('addCandidates', <String, dynamic>{
+        'peerConnectionId': _peerConnectionId,
+        'candidates': candidates.map((c) => c.toMap()).toList(),
+      });
+    } on PlatformException catch (e) {
+      throw 'Unable to RTCPeerConnection::addCandidates: ${e.message}';
+    }
+  }
+
   @override
-  Future<List<StatsReport>> getStats([MediaStreamTrack? track]) async {
+  Future<List<StatsReport>> getStats([MediaStreamTrack? track]) =>
+      _getStats(track, null);
+
+  /// Android only: like [getStats], but only converts the reports of the
+  /// given [types] and, for the types listed in [members], only these
+  /// members.
+  Future<List<StatsReport>> getFilteredStats(
+          {MediaStreamTrack? track,
+          List<String>? types,
+          Map<String, List<String>>? members}) =>
+      _getStats(track, _statsFilter(types, members));
+
+  Map<String, dynamic> _statsFilter(
+          List<String>? types, Map<String, List<String>>? members) =>
+      <String, dynamic>{
+        if (types != null) 'types': types,
+        if (members != null) 'members': members,
+      };
+
+  /// Android only: collects the stats of all [peerConnections] in one
+  /// platform call, filtered as in [getFilteredStats]. Peer connections
+  /// which do not answer within [timeout] are missing from the result.
+  static Future<Map<RTCPeerConnectionNative, List<StatsReport>>>
+      getStatsForAll(List<RTCPeerConnectionNative> peerConnections,
+          {List<String>? types,
+          Map<String, List<String>>? members,
+          Duration timeout = const Duration(seconds: 2)}) async {
+    final response = await WebRTC.invokeMethod<Map<dynamic, dynamic>, dynamic>(
+        'getStatsForAll', <String, dynamic>{
+      'peerConnectionIds':
+          peerConnections.map((pc) => pc._peerConnectionId).toList(),
+      'timeoutMs': timeout.inMilliseconds,
+      'filter': <String, dynamic>{
+        if (types != null) 'types': types,
+        if (members != null) 'members': members,
+      },
+    });
+    final stats = <RTCPeerConnectionNative, List<StatsReport>>{};
+    for (var pc in peerConnections) {
+      final reports = response?[pc._peerConnectionId];
+      if (reports != null) {
+        stats[pc] = _statsReportsFromResponse(reports);
+      }
+    }
+    return stats;
+  }
+
+  static List<StatsReport> _statsReportsFromResponse(dynamic response) {
+    var stats = <StatsReport>[];
+    List<dynamic> reports = response['stats'];
+    for (var report in reports) {
+      stats.add(StatsReport(report['id'], report['type'],
+          (report['timestamp'] as num).toDouble(), report['values']));
+    }
+    return stats;
+  }
+
+  Future<List<StatsReport>> _getStats(
+      MediaStreamTrack? track, Map<String, dynamic>? filter) async {
     try {
       final response = await WebRTC.invokeMethod('getStats', <String, dynamic>{
         'peerConnectionId': _peerConnectionId,
-        'trackId': track?.id
+        'trackId': track?.id,
+        if (filter != null) 'filter': filter,
       });
 
-      var stats = <StatsReport>[];
-      if (response != null) {
-        List<dynamic> reports = response['stats'];
-        for (var report in reports) {
-          stats.add(StatsReport(report['id'], report['type'],
-              (report['timestamp'] as num).toDouble(), report['values']));
-        }
-      }
-      return stats;
+      return response != null
+          ? _statsReportsFromResponse(response)
+          : <StatsReport>[];
     } on PlatformException catch (e) {
       throw 'Unable to RTCPeerConnection::getStats: ${e.message}';
     }
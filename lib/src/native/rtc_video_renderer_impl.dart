@@ -1,6 +1,8 @@
 import 'dart:async';
+import 'dart:ui' show Size;
 
 import 'package:flutter/foundation.dart';
+import 'package:flutter/scheduler.dart';
 import 'package:flutter/services.dart';
 
 import 'package:webrtc_interface/webrtc_interface.dart';
@@ -24,9 +26,120 @@ class RTCVideoRenderer extends ValueNotifier<RTCVideoValue>
     _textureId = response['textureId'];
     _eventSubscription = EventChannel('FlutterWebRTC/Texture$textureId')
         .receiveBroadcastStream()
+        .expand(unbatchEvents)
         .listen(eventListener, onError: errorListener);
   }
 
+  /// Keeps up to [maxSize] disposed renderers, with their texture and EGL
+  /// resources, for reuse by the next [initialize]. 0 disables the pool.
+  static Future<void> setPoolOptions({required int maxSize}) async {
+    await WebRTC.invokeMethod('setVideoRendererPoolOptions', <String, dynamic>{
+      'maxSize': maxSize,
+    });
+  }
+
+  /// The number of parked renderers, the pool size, and how many
+  /// [initialize] calls were served from the pool (hits) or not (misses).
+  static Future<Map<String, dynamic>> getPoolStats() async {
+    final response = await WebRTC.invokeMethod('getVideoRendererPoolStats');
+    return Map<String, dynamic>.from(response);
+  }
+
+  /// Caps renderers drawn on at most [maxPixels] physical pixels to [fps]
+  /// frames per second. A [maxPixels] of 0 disables the cap. Android only.
+  static Future<void> setThumbnailPolicy(
+      {required int maxPixels, double? fps}) async {
+    await WebRTC.invokeMethod(
+        'setVideoRendererThumbnailPolicy', <String, dynamic>{
+      'maxPixels': maxPixels,
+      if (fps != null) 'fps': fps,
+    });
+  }
+
+  Size? _renderedSize;
+
+  /// Limits the framerate drawn into the texture, `null` removes the limit.
+  /// Android only.
+  Future<void> setMaxFps(double? fps) async {
+    if (textureId == null) throw 'Call initialize before setting the max fps';
+    await WebRTC.invokeMethod('videoRendererSetMaxFps', <String, dynamic>{
+      'textureId': textureId,
+      'fps': fps ?? 0,
+    });
+  }
+
+  bool _visible = true;
+
+  /// Whether the renderer draws frames; hidden renderers are detached from
+  /// their track.
+  bool get visible => _visible;
+
+  /// Called with the new visibility after [setVisible] changed it.
+  Function(bool visible)? onVisibilityChanged;
+
+  /// Stops drawing frames while the texture is off screen, and resumes
+  /// when it is visible again.
+  Future<void> setVisible(bool visible) async {
+    if (textureId == null) throw 'Call initialize before setting visibility';
+    await WebRTC.invokeMethod('videoRendererSetVisible', <String, dynamic>{
+      'textureId': textureId,
+      'visible': visible,
+    });
+  }
+
+  Size? _scheduledSize;
+
+  /// Reports [size] with [setRenderedSize] once the current frame is laid
+  /// out, only when it changed. Called by [RTCVideoView] from build, which
+  /// must not call the platform itself; failures are ignored and retried on
+  /// the next layout.
+  void scheduleRenderedSize(Size size) {
+    if (!WebRTC.platformIsAndroid ||
+        textureId == null ||
+        size == _scheduledSize) {
+      return;
+    }
+    _scheduledSize = size;
+    _ambiguate(SchedulerBinding.instance)?.addPostFrameCallback((_) {
+      if (size != _scheduledSize) {
+        // A newer size was scheduled since.
+        return;
+      }
+      setRenderedSize(size).catchError((Object e) {
+        if (size == _scheduledSize) {
+          _scheduledSize = null;
+        }
+      });
+    });
+  }
+
+  /// Reports the size in physical pixels the texture is drawn at, used by
+  /// the thumbnail policy, on Android only.
+  Future<void> setRenderedSize(Size size) async {
+    if (!WebRTC.platformIsAndroid ||
+        textureId == null ||
+        size == _renderedSize) {
+      return;
+    }
+    final requested = textureId;
+    _renderedSize = size;
+    try {
+      await WebRTC.invokeMethod(
+          'videoRendererSetRenderedSize', <String, dynamic>{
+        'textureId': requested,
+        'width': size.width.round(),
+        'height': size.height.round(),
+      });
+    } on PlatformException {
+      // The renderer was disposed while the size was on its way.
+      if (textureId != requested) {
+        return;
+      }
+      _renderedSize = null;
+      rethrow;
+    }
+  }
+
   @override
   int get videoWidth => value.width.toInt();
 
@@ -87,6 +200,9 @@ class RTCVideoRenderer extends ValueNotifier<RTCVideoValue>
       });
       _textureId = null;
     }
+    _renderedSize = null;
+    _scheduledSize = null;
+    _visible = true;
     return super.dispose();
   }
 
@@ -109,6 +225,10 @@ class RTCVideoRenderer extends ValueNotifier<RTCVideoValue>
         value = value.copyWith(renderVideo: renderVideo);
         onFirstFrameRendered?.call();
         break;
+      case 'didChangeVisibility':
+        _visible = map['visible'];
+        onVisibilityChanged?.call(_visible);
+        break;
     }
   }
 
@@ -151,3 +271,6 @@ class RTCVideoRenderer extends ValueNotifier<RTCVideoValue>
     return true;
   }
 }
+
+/// [SchedulerBinding.instance] is only nullable before Flutter 3.
+T? _ambiguate<T>(T? value) => value;
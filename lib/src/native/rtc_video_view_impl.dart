@@ -32,6 +32,10 @@ class RTCVideoView extends StatelessWidget {
   }
 
   Widget _buildVideoView(BuildContext context, BoxConstraints constraints) {
+    if (constraints.hasBoundedWidth && constraints.hasBoundedHeight) {
+      videoRenderer.scheduleRenderedSize(
+          constraints.biggest * MediaQuery.of(context).devicePixelRatio);
+    }
     return Center(
       child: Container(
         width: constraints.maxWidth,
@@ -1,10 +1,34 @@
+import 'dart:async';
 import 'dart:io';
 
+import 'package:flutter/foundation.dart';
 import 'package:flutter/services.dart';
 
 class WebRTC {
   static const MethodChannel _channel = MethodChannel('FlutterWebRTC.Method');
 
+  /// High-frequency, UI independent calls which the Android plugin decodes
+  /// and handles off the platform thread.
+  ///
+  /// Calls on one channel keep their order, calls on different channels do
+  /// not. [invokeMethod] therefore holds a call back until the calls of the
+  /// same peer connection or track made on the other channel have completed,
+  /// e.g. an `addCandidate` until `setRemoteDescription` is done, or a
+  /// `dataChannelClose` until the preceding `dataChannelSend`s are.
+  static const MethodChannel _backgroundChannel =
+      MethodChannel('FlutterWebRTC.Method.Background');
+
+  static const Set<String> _backgroundMethods = {
+    'addCandidate',
+    'addCandidates',
+    'getStats',
+    'getStatsForAll',
+    'dataChannelSend',
+    'dataChannelSendBatch',
+    'rtpSenderSetParameters',
+    'mediaStreamTrackSetEnable',
+  };
+
   static bool get platformIsDesktop =>
       Platform.isWindows || Platform.isMacOS || Platform.isLinux;
 
@@ -22,10 +46,107 @@ class WebRTC {
 
   static bool get platformIsWeb => false;
 
+  /// The last call per peer connection and per track, see [_backgroundChannel].
+  static final Map<String, _OrderedCall> _lastCalls = {};
+
   static Future<T?> invokeMethod<T, P>(String methodName,
-          [dynamic param]) async =>
-      _channel.invokeMethod<T>(
-        methodName,
-        param,
-      );
+      [dynamic param]) async {
+    if (!platformIsAndroid) {
+      return _channel.invokeMethod<T>(methodName, param);
+    }
+    final background = _backgroundMethods.contains(methodName);
+    return callOrdered<T>(
+        _orderingKeys(param),
+        background,
+        () => (background ? _backgroundChannel : _channel)
+            .invokeMethod<T>(methodName, param));
+  }
+
+  /// Runs [send] once the earlier calls sharing one of [keys] allow it: calls
+  /// on the same channel only have to be sent first, calls on the other
+  /// channel have to be done.
+  ///
+  /// A call is only done once every earlier call sharing one of its keys is
+  /// done too, so waiting on the last call waits on all of them. A failed
+  /// call still releases the calls after it: its error goes to its own
+  /// caller only, and later calls, e.g. a dispose after a failed `getStats`,
+  /// must still reach the platform.
+  @visibleForTesting
+  static Future<T?> callOrdered<T>(
+      List<String> keys, bool background, Future<T?> Function() send) async {
+    final previous = <_OrderedCall>{};
+    final barriers = <Future<void>>[];
+    for (final key in keys) {
+      final last = _lastCalls[key];
+      if (last != null && previous.add(last)) {
+        barriers.add(last.background != background ? last.done : last.sent);
+      }
+    }
+    final call = _OrderedCall(background);
+    for (final key in keys) {
+      _lastCalls[key] = call;
+    }
+    try {
+      if (barriers.isNotEmpty) {
+        // Never fails, see _OrderedCall.done.
+        await Future.wait(barriers);
+      }
+      final response = send();
+      call._sent.complete();
+      return await response;
+    } finally {
+      if (!call._sent.isCompleted) {
+        call._sent.complete();
+      }
+      call._done.complete(
+          Future.wait(previous.map((earlier) => earlier.done)).then((_) {
+        for (final key in keys) {
+          if (identical(_lastCalls[key], call)) {
+            _lastCalls.remove(key);
+          }
+        }
+      }));
+    }
+  }
+
+  static List<String> _orderingKeys(dynamic param) {
+    if (param is! Map) {
+      return const [];
+    }
+    final keys = <String>[];
+    final peerConnectionId = param['peerConnectionId'];
+    if (peerConnectionId is String && peerConnectionId.isNotEmpty) {
+      keys.add('pc:$peerConnectionId');
+    }
+    final peerConnectionIds = param['peerConnectionIds'];
+    if (peerConnectionIds is List) {
+      for (final id in peerConnectionIds) {
+        keys.add('pc:$id');
+      }
+    }
+    final trackId = param['trackId'];
+    if (trackId is String && trackId.isNotEmpty) {
+      keys.add('track:$trackId');
+    }
+    return keys;
+  }
 }
+
+class _OrderedCall {
+  _OrderedCall(this.background);
+
+  final bool background;
+  final Completer<void> _sent = Completer<void>();
+  final Completer<void> _done = Completer<void>();
+
+  Future<void> get sent => _sent.future;
+
+  /// Completes, without an error even when the call failed, once the call
+  /// and every earlier call sharing one of its keys have completed.
+  Future<void> get done => _done.future;
+}
+
+/// The Android plugin batches events posted within the same frame or looper
+/// turn into a single list; flattens them back into individual events.
+Iterable<dynamic> unbatchEvents(dynamic event) =>
+    event is List ? event : <dynamic>[event];
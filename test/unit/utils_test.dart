@@ -0,0 +1,85 @@
+import 'dart:async';
+
+import 'package:flutter/services.dart';
+
+import 'package:flutter_test/flutter_test.dart';
+
+import 'package:flutter_webrtc/src/native/utils.dart';
+
+Future<void> settle() async {
+  for (var i = 0; i < 10; i++) {
+    await Future<void>.delayed(Duration.zero);
+  }
+}
+
+void main() {
+  test('Calls on the same channel are sent without waiting for responses',
+      () async {
+    final sent = <String>[];
+    final responses = List.generate(3, (_) => Completer<String>());
+    final calls = List.generate(
+        3,
+        (i) => WebRTC.callOrdered<String>(['pc:a'], false, () {
+              sent.add('$i');
+              return responses[i].future;
+            }));
+    await settle();
+    expect(sent, ['0', '1', '2']);
+    for (var i = 0; i < 3; i++) {
+      responses[i].complete('$i');
+      expect(await calls[i], '$i');
+    }
+  });
+
+  test(
+      'A call on the other channel waits for every earlier call, failed ones included',
+      () async {
+    final sent = <String>[];
+    final first = Completer<String>();
+    final a = WebRTC.callOrdered<String>(['pc:b'], false, () {
+      sent.add('a');
+      return first.future;
+    });
+    final b = WebRTC.callOrdered<String>(['pc:b'], false, () {
+      sent.add('b');
+      return Future<String>.error(PlatformException(code: 'b'));
+    });
+    final c = WebRTC.callOrdered<String>(['pc:b'], true, () {
+      sent.add('c');
+      return Future.value('c');
+    });
+    final d = WebRTC.callOrdered<String>(['pc:b'], false, () {
+      sent.add('d');
+      return Future.value('d');
+    });
+
+    // b failed, but c still waits for a, which has not answered yet.
+    await expectLater(b, throwsA(isA<PlatformException>()));
+    await settle();
+    expect(sent, ['a', 'b']);
+
+    first.complete('a');
+    expect(await a, 'a');
+    expect(await c, 'c');
+    expect(await d, 'd');
+    expect(sent, ['a', 'b', 'c', 'd']);
+  });
+
+  test('Calls for different peer connections do not wait for each other',
+      () async {
+    final sent = <String>[];
+    final pending = Completer<String>();
+    final a = WebRTC.callOrdered<String>(['pc:c'], false, () {
+      sent.add('a');
+      return pending.future;
+    });
+    final b = WebRTC.callOrdered<String>(['pc:d'], true, () {
+      sent.add('b');
+      return Future.value('b');
+    });
+    expect(await b, 'b');
+    expect(sent, ['a', 'b']);
+    pending.complete('a');
+    expect(await a, 'a');
+  });
+}